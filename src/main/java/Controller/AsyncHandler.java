@@ -0,0 +1,24 @@
+package Controller;
+
+import java.util.concurrent.CompletableFuture;
+
+import io.javalin.http.Context;
+
+/**
+ * A handler that hands its work off and returns a future instead of
+ * blocking the request thread. It reads the request before returning, and
+ * leaves the response to the Reply its future completes with (see
+ * SocialMediaController.async()).
+ */
+@FunctionalInterface
+interface AsyncHandler {
+    /**
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     *
+     * @return  Completes with the response once the work is done
+     * @throws Exception    if the request couldn't be handed off, e.g.
+     *                      because its body isn't valid JSON
+     */
+    CompletableFuture<Reply> handle(Context ctx) throws Exception;
+}
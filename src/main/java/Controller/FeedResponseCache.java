@@ -0,0 +1,201 @@
+package Controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import Util.CacheMetrics;
+import io.javalin.http.ContentType;
+import io.javalin.http.Context;
+
+/**
+ * This is a cache of encoded feed responses (the JSON bytes of
+ * GET /messages and GET /accounts/{account_id}/messages), so a feed that
+ * hasn't changed since it was last served is written out as a single buffer
+ * instead of being queried and serialized again.
+ *
+ * Each response is stored with the feed version it was built from, which
+ * MessageService bumps on every create, update and delete. A cached response
+ * is only served while its version is still current, and for at most
+ * socialmedia.cache.responses.ttlSeconds (default 60) to bound how long
+ * changes made outside MessageService go unseen.
+ *
+ * Responses are also kept gzip-compressed (socialmedia.cache.responses.gzip,
+ * default true) for clients that accept gzip. The cache is bounded by the
+ * bytes it holds (socialmedia.cache.responses.maxBytes, default 16 MB), and
+ * responses bigger than socialmedia.cache.responses.maxResponseBytes
+ * (default 256 KB) are streamed without being cached.
+ */
+class FeedResponseCache {
+    private static final long MAX_BYTES = Long.getLong("socialmedia.cache.responses.maxBytes", 16L * 1024 * 1024);
+    private static final int MAX_RESPONSE_BYTES =
+        Integer.getInteger("socialmedia.cache.responses.maxResponseBytes", 256 * 1024);
+    private static final boolean GZIP =
+        Boolean.parseBoolean(System.getProperty("socialmedia.cache.responses.gzip", "true"));
+    private static final long TTL_SECONDS = Long.getLong("socialmedia.cache.responses.ttlSeconds", 60);
+
+    /** Encoded responses by feed key */
+    private final Cache<String, EncodedFeed> responses = Caffeine.newBuilder()
+        .maximumWeight(MAX_BYTES)
+        .weigher((String key, EncodedFeed feed) -> feed.size())
+        .expireAfterWrite(Duration.ofSeconds(TTL_SECONDS))
+        .recordStats()
+        .build();
+
+    /**
+     * Gets a cached response, if it was built from the current version of
+     * the feed.
+     *
+     * @param key       Key of the feed
+     * @param version   Current version of the feed
+     *
+     * @return  The cached response, or "null" if there's none or it's stale
+     */
+    EncodedFeed get(String key, long version) {
+        EncodedFeed feed = responses.getIfPresent(key);
+        return feed != null && feed.version == version ? feed : null;
+    }
+
+    /**
+     * Caches a response built from a version of the feed.
+     *
+     * @param key       Key of the feed
+     * @param version   Version of the feed read before the response was built
+     * @param json      The encoded response
+     */
+    void put(String key, long version, byte[] json) {
+        if (json.length > MAX_RESPONSE_BYTES) {
+            return;
+        }
+
+        responses.asMap().merge(key, new EncodedFeed(version, json, GZIP ? gzip(json) : null),
+            (existing, built) -> existing.version > built.version ? existing : built);
+    }
+
+    /**
+     * Wraps a response stream so everything written through it is also
+     * copied into a buffer, as long as it stays under the size at which
+     * responses are no longer cached.
+     *
+     * @param target    The response stream
+     *
+     * @return  Stream to write the response to
+     */
+    Capture capture(OutputStream target) {
+        return new Capture(target);
+    }
+
+    /**
+     * @return  Hit, miss and eviction counts of the cache
+     */
+    CacheMetrics getMetrics() {
+        return CacheMetrics.of("feed-responses", responses);
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            return null;    // Can't happen writing to memory
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * An encoded feed response along with the feed version it was built from.
+     */
+    static final class EncodedFeed {
+        final long version;
+        final byte[] json;
+        final byte[] gzip;
+
+        EncodedFeed(long version, byte[] json, byte[] gzip) {
+            this.version = version;
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        int size() {
+            return json.length + (gzip == null ? 0 : gzip.length);
+        }
+
+        /**
+         * Writes the response, pre-compressed if the client accepts gzip.
+         *
+         * @param ctx   data handler for HTTP requests and responses, provided
+         *              the Javalin app
+         * @throws IOException  if writing the response failed
+         */
+        void writeTo(Context ctx) throws IOException {
+            ctx.contentType(ContentType.APPLICATION_JSON);
+
+            String acceptEncoding = ctx.header("Accept-Encoding");
+            if (gzip != null && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                // Write to the servlet stream directly so Javalin doesn't
+                // compress the response a second time
+                ctx.header("Content-Encoding", "gzip");
+                ctx.header("Vary", "Accept-Encoding");
+                ctx.res().setContentLength(gzip.length);
+                ctx.res().getOutputStream().write(gzip);
+            } else {
+                ctx.result(json);
+            }
+        }
+    }
+
+    /**
+     * An output stream that copies what's written to it into a bounded
+     * buffer.
+     */
+    static final class Capture extends OutputStream {
+        private final OutputStream target;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private Capture(OutputStream target) {
+            this.target = target;
+        }
+
+        /**
+         * @return  Everything written so far, or "null" if it grew too big to
+         *          cache
+         */
+        byte[] captured() {
+            return buffer == null ? null : buffer.toByteArray();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+            if (buffer != null) {
+                buffer.write(b);
+                checkSize();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target.write(b, off, len);
+            if (buffer != null) {
+                buffer.write(b, off, len);
+                checkSize();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+
+        private void checkSize() {
+            if (buffer.size() > MAX_RESPONSE_BYTES) {
+                buffer = null;
+            }
+        }
+    }
+}
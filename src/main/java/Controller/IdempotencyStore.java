@@ -0,0 +1,175 @@
+package Controller;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import Util.CacheMetrics;
+import io.javalin.http.Context;
+
+/**
+ * This is a store of the responses to requests made with an
+ * "Idempotency-Key" header, so a client that retries a request (say, after a
+ * timeout) gets the original response back instead of creating the message
+ * or account a second time.
+ *
+ * Keys are scoped to the method and path they were used with. The first
+ * request with a key runs its handler and stores the response; a retry with
+ * the same key and body is answered from the store, with an
+ * "Idempotent-Replayed: true" header, without running the handler again.
+ * Retries that arrive while the first request is still running wait for it
+ * (for up to socialmedia.idempotency.waitSeconds, default 10, after which
+ * they get a 409 message) instead of running alongside it, without holding
+ * a request thread while they wait. Reusing a key with a different body
+ * returns a 422 message (unprocessable).
+ *
+ * The response stored is the one the handler's work really produced, even
+ * if the client stopped waiting for it and got a 503 message: a write that
+ * outlives its timeout still commits, so a retry must get its result rather
+ * than write again. Server errors (5xx), rate-limited requests (429) and
+ * requests whose handler failed, so nothing was written (the
+ * DatabaseExecutor turned the work away or never started it, or the work
+ * threw), aren't stored, so they can be retried. The store holds
+ * up to socialmedia.idempotency.maxKeys keys (default 50000), each for
+ * socialmedia.idempotency.ttlSeconds (default 86400, one day).
+ */
+class IdempotencyStore {
+    static final String HEADER = "Idempotency-Key";
+
+    private static final long MAX_KEYS = Long.getLong("socialmedia.idempotency.maxKeys", 50_000);
+    private static final long TTL_SECONDS = Long.getLong("socialmedia.idempotency.ttlSeconds", 86_400);
+    private static final long WAIT_SECONDS = Long.getLong("socialmedia.idempotency.waitSeconds", 10);
+    private static final int MAX_KEY_LENGTH = 255;
+
+    /** Requests by method, path and key */
+    private final Cache<String, Request> requests = Caffeine.newBuilder()
+        .maximumSize(MAX_KEYS)
+        .expireAfterWrite(Duration.ofSeconds(TTL_SECONDS))
+        .recordStats()
+        .build();
+
+    /**
+     * Wraps a handler so requests with an "Idempotency-Key" header run it at
+     * most once per key. Requests without the header run it as usual.
+     *
+     * @param handler   The handler of a non-idempotent request
+     *
+     * @return  The wrapped handler
+     */
+    AsyncHandler wrap(AsyncHandler handler) {
+        return ctx -> handle(ctx, handler);
+    }
+
+    /**
+     * @return  Hit, miss and eviction counts of the store, where a hit is a
+     *          retried request
+     */
+    CacheMetrics getMetrics() {
+        return CacheMetrics.of("idempotency-keys", requests);
+    }
+
+    private CompletableFuture<Reply> handle(Context ctx, AsyncHandler handler) throws Exception {
+        String key = ctx.header(HEADER);
+        if (key == null) {
+            return handler.handle(ctx);
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            return CompletableFuture.completedFuture(Reply.status(400));
+        }
+
+        return attempt(ctx, handler, ctx.method() + " " + ctx.path() + " " + key, ctx.bodyAsBytes());
+    }
+
+    /**
+     * Runs the handler if this is the first request with the key, and
+     * otherwise replays the first request's response once it's ready,
+     * without holding a thread while it waits.
+     */
+    private CompletableFuture<Reply> attempt(Context ctx, AsyncHandler handler, String scopedKey, byte[] body)
+            throws Exception {
+        Request started = new Request(body);
+        Request request = requests.get(scopedKey, k -> started);
+        if (request == started) {
+            return run(ctx, handler, scopedKey, request);
+        }
+
+        if (!Arrays.equals(request.body, body)) {
+            return CompletableFuture.completedFuture(Reply.status(422));
+        }
+
+        return request.response.copy()
+            .orTimeout(WAIT_SECONDS, TimeUnit.SECONDS)
+            .handle((response, e) -> {
+                if (e == null) {
+                    return CompletableFuture.completedFuture(response.header("Idempotent-Replayed", "true"));
+                }
+                if (e instanceof TimeoutException) {
+                    // Still running, the client may retry later
+                    return CompletableFuture.completedFuture(Reply.status(409));
+                }
+                // The first request failed, so run it again
+                try {
+                    return attempt(ctx, handler, scopedKey, body);
+                } catch (Exception retryFailure) {
+                    throw new CompletionException(retryFailure);
+                }
+            })
+            .thenCompose(retry -> retry);
+    }
+
+    /**
+     * Runs the handler for the first request with a key and stores the
+     * response its work completes with for the retries, however long that
+     * takes.
+     */
+    private CompletableFuture<Reply> run(Context ctx, AsyncHandler handler, String scopedKey, Request request)
+            throws Exception {
+        CompletableFuture<Reply> result;
+        try {
+            result = handler.handle(ctx);
+        } catch (Exception e) {
+            forget(scopedKey, request, e);
+            throw e;
+        }
+
+        return result.whenComplete((response, e) -> {
+            if (e != null) {
+                forget(scopedKey, request, e);
+                return;
+            }
+            // Worth retrying later, so don't answer retries with them
+            if (response.status >= 500 || response.status == 429) {
+                requests.asMap().remove(scopedKey, request);
+            }
+            request.response.complete(response);
+        });
+    }
+
+    /**
+     * Drops a request whose handler failed without writing anything, so it
+     * can be retried, and wakes up the retries waiting for it.
+     */
+    private void forget(String scopedKey, Request request, Throwable e) {
+        requests.asMap().remove(scopedKey, request);
+        request.response.completeExceptionally(e);
+    }
+
+    /**
+     * A request made with a key: its body, and its response once the
+     * handler's work is done.
+     */
+    private static final class Request {
+        final byte[] body;
+        final CompletableFuture<Reply> response = new CompletableFuture<>();
+
+        Request(byte[] body) {
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package Controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import Util.AdaptiveConcurrencyLimit;
+import Util.ConcurrencyLimitStats;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import io.javalin.http.Header;
+import io.javalin.http.ServiceUnavailableResponse;
+
+/**
+ * Sheds load once the server is overloaded: requests beyond an adaptive
+ * concurrency limit are turned away straight away with a 503 message
+ * (service unavailable) and a "Retry-After" header, instead of queueing
+ * until every client times out.
+ *
+ * Reads (GET and HEAD) and writes (everything else) have separate limits, so
+ * a flood of feed reads can't starve POST /messages and the other way round.
+ * Both adapt to the latency of the requests they let through (see
+ * AdaptiveConcurrencyLimit), starting at socialmedia.limit.initial (default
+ * 20) and staying between socialmedia.limit.min (default 4) and
+ * socialmedia.limit.reads.max or socialmedia.limit.writes.max (default 200
+ * and 100). Live streams and the metrics endpoints aren't limited.
+ *
+ * Set the "socialmedia.limit.enabled" system property to false to turn it
+ * off.
+ */
+class LoadShedder {
+    private static final boolean ENABLED =
+        Boolean.parseBoolean(System.getProperty("socialmedia.limit.enabled", "true"));
+    private static final int INITIAL_LIMIT = Integer.getInteger("socialmedia.limit.initial", 20);
+    private static final int MIN_LIMIT = Integer.getInteger("socialmedia.limit.min", 4);
+    private static final int MAX_READS = Integer.getInteger("socialmedia.limit.reads.max", 200);
+    private static final int MAX_WRITES = Integer.getInteger("socialmedia.limit.writes.max", 100);
+
+    /** Context attribute holding the slot a request took */
+    private static final String PERMIT = "socialmedia.limit.permit";
+
+    private final AdaptiveConcurrencyLimit reads =
+        new AdaptiveConcurrencyLimit("reads", INITIAL_LIMIT, MIN_LIMIT, MAX_READS);
+    private final AdaptiveConcurrencyLimit writes =
+        new AdaptiveConcurrencyLimit("writes", INITIAL_LIMIT, MIN_LIMIT, MAX_WRITES);
+
+    /**
+     * Adds the filters taking and giving back slots to the app, unless load
+     * shedding is turned off.
+     *
+     * @param app   The Javalin app, before any requests are served
+     */
+    void install(Javalin app) {
+        if (!ENABLED) {
+            return;
+        }
+        app.before(this::before);
+        app.after(this::after);
+    }
+
+    /**
+     * @return  Limit, in-flight requests and rejections for reads and writes
+     */
+    List<ConcurrencyLimitStats> getStats() {
+        List<ConcurrencyLimitStats> stats = new ArrayList<>();
+        stats.add(reads.getStats());
+        stats.add(writes.getStats());
+
+        return stats;
+    }
+
+    private void before(Context ctx) {
+        AdaptiveConcurrencyLimit limit = limitFor(ctx);
+        if (limit == null) {
+            return;
+        }
+
+        if (!limit.tryAcquire()) {
+            ctx.header(Header.RETRY_AFTER, "1");
+            // Skips the handler; the after filter still runs but has nothing
+            // to give back
+            throw new ServiceUnavailableResponse();
+        }
+        ctx.attribute(PERMIT, new Permit(limit));
+    }
+
+    /**
+     * Runs once the response is ready, including after an async handler's
+     * future has completed and after a handler threw.
+     */
+    private void after(Context ctx) {
+        Permit permit = ctx.attribute(PERMIT);
+        if (permit == null) {
+            return;
+        }
+
+        // A 503 here came from an overloaded DatabaseExecutor
+        permit.limit.release(System.nanoTime() - permit.startedAt, ctx.statusCode() == 503);
+    }
+
+    /**
+     * @return  The limit a request counts against, or "null" if it isn't
+     *          limited
+     */
+    private AdaptiveConcurrencyLimit limitFor(Context ctx) {
+        String path = ctx.path();
+        if (path.startsWith("/metrics/") || path.endsWith("/live")) {
+            return null;
+        }
+
+        HandlerType method = ctx.method();
+        return method == HandlerType.GET || method == HandlerType.HEAD ? reads : writes;
+    }
+
+    /**
+     * A slot taken for a request, and when.
+     */
+    private static final class Permit {
+        final AdaptiveConcurrencyLimit limit;
+        final long startedAt = System.nanoTime();
+
+        Permit(AdaptiveConcurrencyLimit limit) {
+            this.limit = limit;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package Controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import Model.Account;
+import Model.Message;
+import Util.RateLimiter;
+import Util.RateLimiterStats;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+
+/**
+ * The per-client rate limits of the endpoints that are worth abusing.
+ *
+ * New messages are limited per posting account, so one spammy account
+ * can't flood POST /messages. Logins are limited per username, against
+ * guessing one account's password, and per client IP, against trying
+ * leaked credentials for many accounts from one place. A request over its
+ * limit gets a 429 message (too many requests) with a "Retry-After" header
+ * before it reaches a service or the database.
+ *
+ * The limits are socialmedia.rateLimit.messages.perMinute and .burst
+ * (default 60 and 30), socialmedia.rateLimit.login.perMinute and .burst per
+ * username (default 10 and 10) and socialmedia.rateLimit.loginIp.perMinute
+ * and .burst per IP (default 100 and 50). Each limiter keeps up to
+ * socialmedia.rateLimit.maxKeys buckets (default 100000). Set the
+ * "socialmedia.rateLimit.enabled" system property to false to turn them
+ * off.
+ */
+class RateLimits {
+    private static final boolean ENABLED =
+        Boolean.parseBoolean(System.getProperty("socialmedia.rateLimit.enabled", "true"));
+    private static final long MAX_KEYS = Long.getLong("socialmedia.rateLimit.maxKeys", 100_000);
+
+    private final RateLimiter<Integer> messagesByAccount = new RateLimiter<>("messages-by-account",
+        Integer.getInteger("socialmedia.rateLimit.messages.perMinute", 60),
+        Integer.getInteger("socialmedia.rateLimit.messages.burst", 30), MAX_KEYS);
+    private final RateLimiter<String> loginsByUsername = new RateLimiter<>("logins-by-username",
+        Integer.getInteger("socialmedia.rateLimit.login.perMinute", 10),
+        Integer.getInteger("socialmedia.rateLimit.login.burst", 10), MAX_KEYS);
+    private final RateLimiter<String> loginsByIp = new RateLimiter<>("logins-by-ip",
+        Integer.getInteger("socialmedia.rateLimit.loginIp.perMinute", 100),
+        Integer.getInteger("socialmedia.rateLimit.loginIp.burst", 50), MAX_KEYS);
+
+    /**
+     * Checks the posting account's limit.
+     *
+     * @return  A 429 reply if it's used up, or "null" if the message may be
+     *          created
+     */
+    Reply limitMessage(Message message) {
+        return ENABLED ? limit(messagesByAccount, message.getPosted_by()) : null;
+    }
+
+    /**
+     * Checks the client IP's and the username's login limits.
+     *
+     * @return  A 429 reply if either is used up, or "null" if the login may
+     *          be attempted
+     */
+    Reply limitLogin(Context ctx, Account account) {
+        if (!ENABLED) {
+            return null;
+        }
+        Reply limited = limit(loginsByIp, ctx.ip());
+        if (limited != null || account.getUsername() == null) {
+            return limited;
+        }
+        return limit(loginsByUsername, account.getUsername());
+    }
+
+    /**
+     * @return  Allowed and refused requests of each limiter
+     */
+    List<RateLimiterStats> getStats() {
+        List<RateLimiterStats> stats = new ArrayList<>();
+        stats.add(messagesByAccount.getStats());
+        stats.add(loginsByUsername.getStats());
+        stats.add(loginsByIp.getStats());
+
+        return stats;
+    }
+
+    private static <K> Reply limit(RateLimiter<K> limiter, K key) {
+        if (limiter.tryAcquire(key)) {
+            return null;
+        }
+        return Reply.status(429).header(Header.RETRY_AFTER, Long.toString(limiter.getRetryAfterSeconds()));
+    }
+}
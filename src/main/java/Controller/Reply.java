@@ -0,0 +1,74 @@
+package Controller;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import io.javalin.http.ContentType;
+import io.javalin.http.Context;
+
+/**
+ * The status, headers and body of a response, built by an AsyncHandler once
+ * its work is done instead of being written to the context straight away.
+ *
+ * The client may have been answered with a 503 message (the work timed out)
+ * by the time the work finishes, and the context must not be touched after
+ * that, so SocialMediaController.async() only applies a reply that's ready
+ * in time. IdempotencyStore keeps replies either way to answer retries with.
+ */
+final class Reply {
+    final int status;
+    final String contentType;
+    final byte[] body;
+    final Map<String, String> headers;
+
+    private Reply(int status, String contentType, byte[] body, Map<String, String> headers) {
+        this.status = status;
+        this.contentType = contentType;
+        this.body = body;
+        this.headers = headers;
+    }
+
+    /**
+     * @return  A reply with a status and no body
+     */
+    static Reply status(int status) {
+        return new Reply(status, null, null, Collections.emptyMap());
+    }
+
+    /**
+     * @return  A 200 reply with a value as its JSON body
+     *
+     * @throws JsonProcessingException  if the value can't be converted to
+     *                                  JSON
+     */
+    static Reply json(ObjectWriter writer, Object value) throws JsonProcessingException {
+        return new Reply(200, ContentType.JSON, writer.writeValueAsBytes(value), Collections.emptyMap());
+    }
+
+    /**
+     * @return  A copy of this reply with a header added
+     */
+    Reply header(String name, String value) {
+        Map<String, String> copy = new LinkedHashMap<>(headers);
+        copy.put(name, value);
+        return new Reply(status, contentType, body, Collections.unmodifiableMap(copy));
+    }
+
+    /**
+     * Sets the reply as the context's response.
+     */
+    void applyTo(Context ctx) {
+        ctx.status(status);
+        headers.forEach(ctx::header);
+        if (contentType != null) {
+            ctx.contentType(contentType);
+        }
+        if (body != null) {
+            ctx.result(body);
+        }
+    }
+}
@@ -1,17 +1,47 @@
 package Controller;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
+import org.eclipse.jetty.server.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
+import DAO.DataAccessException;
+import DAO.MessageConsumer;
 import Model.Account;
+import Model.ChangeToken;
 import Model.Message;
+import Model.MessageCursor;
+import Model.MessagePage;
 import Service.AccountService;
+import Service.FollowService;
+import Service.MessageBus;
 import Service.MessageService;
+import Service.VersionConflictException;
+import Util.CacheMetrics;
+import Util.ConnectionPool;
+import Util.DatabaseExecutor;
+import Util.JsonUtil;
+import Util.MigrationRunner;
 import io.javalin.Javalin;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.Header;
+import io.javalin.http.sse.SseClient;
+import io.javalin.json.JavalinJackson;
+import io.javalin.util.ConcurrencyUtil;
+import io.javalin.util.LoomUtil;
 
 /**
  * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -19,12 +49,52 @@ import io.javalin.http.Context;
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SocialMediaController.class);
+
+    /**
+     * Whether full (unpaged) feeds are streamed straight from the database
+     * to the response instead of being collected into a list first. Set the
+     * "socialmedia.feed.streaming" system property to false to turn it off.
+     */
+    private static final boolean STREAM_FEEDS =
+        Boolean.parseBoolean(System.getProperty("socialmedia.feed.streaming", "true"));
+
+    /**
+     * Which threads Jetty runs request handlers on, from the
+     * "socialmedia.server.threads" system property: "platform" (default)
+     * for Javalin's bounded pool of platform threads, or "virtual" for a new
+     * virtual thread per request. Handlers block on JDBC, so with platform
+     * threads the pool size caps how many requests are in progress, while
+     * virtual threads just unmount while they wait and leave the connection
+     * pool (socialmedia.pool.maxSize) as the real limit on concurrent
+     * database work. Virtual threads need a Java 21+ runtime; on older ones
+     * this falls back to platform threads.
+     */
+    private static final boolean VIRTUAL_THREADS =
+        "virtual".equalsIgnoreCase(System.getProperty("socialmedia.server.threads", "platform"));
+
     AccountService accountService;
     MessageService messageService;
+    FollowService followService;
+    FeedResponseCache feedResponseCache = new FeedResponseCache();
+    IdempotencyStore idempotencyStore = new IdempotencyStore();
+    LoadShedder loadShedder = new LoadShedder();
+    RateLimits rateLimits = new RateLimits();
 
     public SocialMediaController() {
         this.accountService = new AccountService();
         this.messageService = new MessageService();
+        this.followService = new FollowService(messageService);
+    }
+
+    /**
+     * Builds a controller around the given services, e.g. ones backed by
+     * test DAOs.
+     */
+    public SocialMediaController(AccountService accountService, MessageService messageService) {
+        this.accountService = accountService;
+        this.messageService = messageService;
+        this.followService = new FollowService(messageService);
     }
 
 
@@ -35,19 +105,67 @@ public class SocialMediaController {
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        // Bring the schema up to date before serving any requests
+        MigrationRunner.migrate();
+
+        // Javalin reads this when it builds its Jetty server
+        boolean virtualThreads = VIRTUAL_THREADS && LoomUtil.INSTANCE.getLoomAvailable();
+        if(VIRTUAL_THREADS && !virtualThreads) {
+            LOGGER.warn("Virtual threads aren't available on Java " + System.getProperty("java.version")
+                + ", using platform threads");
+        }
+        ConcurrencyUtil.INSTANCE.setUseLoom(virtualThreads);
+
+        // Share one ObjectMapper between ctx.json() and the handlers
+        Javalin app = Javalin.create(config -> config.jsonMapper(new JavalinJackson(JsonUtil.MAPPER)));
+
+        // Turn requests away with a 503 once reads or writes are over their
+        // adaptive concurrency limit
+        loadShedder.install(app);
 
         // Account Handlers
-        app.post("/register", this::postRegisterAccountHandler);
-        app.post("/login", this::postLoginAccountHandler);
+        // Creating handlers honour "Idempotency-Key", so retries don't
+        // create duplicates. Handlers wrapped in async() run their JDBC work
+        // on the DatabaseExecutor instead of the request thread.
+        app.post("/register", async(idempotencyStore.wrap(this::postRegisterAccountHandler)));
+        app.post("/login", async(this::postLoginAccountHandler));
 
         // Message Handlers
         app.get("/messages", this::getAllMessagesHandler);
         app.get("/accounts/{account_id}/messages", this::getAllMessagesByAccountHandler);
+        // Registered before /messages/{message_id} so "changes" and "live"
+        // aren't read as IDs
+        app.get("/messages/changes", this::getMessageChangesHandler);
+        app.sse("/messages/live", this::liveMessagesHandler);
+        app.sse("/accounts/{account_id}/messages/live", this::liveMessagesByAccountHandler);
         app.get("/messages/{message_id}", this::getMessageByIdHandler);
-        app.post("/messages", this::postCreateMessageHandler);
-        app.patch("/messages/{message_id}", this::patchUpdateMessageHandler);
-        app.delete("/messages/{message_id}", this::deleteMessageHandler);
+        app.post("/messages", async(idempotencyStore.wrap(this::postCreateMessageHandler)));
+        app.post("/messages/batch", this::postCreateMessagesBatchHandler);
+        app.post("/messages/lookup", this::postLookupMessagesHandler);
+        app.patch("/messages/{message_id}", async(this::patchUpdateMessageHandler));
+        app.delete("/messages/{message_id}", async(this::deleteMessageHandler));
+
+        // Follow Handlers
+        app.post("/accounts/{account_id}/following/{followee_id}", async(this::postFollowHandler));
+        app.delete("/accounts/{account_id}/following/{followee_id}", async(this::deleteFollowHandler));
+        app.get("/accounts/{account_id}/following", this::getFollowingHandler);
+        app.get("/accounts/{account_id}/timeline", this::getHomeTimelineHandler);
+
+        // Metrics Handlers
+        app.get("/metrics/pool", this::getPoolMetricsHandler);
+        app.get("/metrics/caches", this::getCacheMetricsHandler);
+        app.get("/metrics/live", this::getLiveMetricsHandler);
+        app.get("/metrics/timelines", this::getTimelineMetricsHandler);
+        app.get("/metrics/writes", this::getWriteMetricsHandler);
+        app.get("/metrics/edits", this::getEditMetricsHandler);
+        app.get("/metrics/executor", this::getExecutorMetricsHandler);
+        app.get("/metrics/coalescing", this::getCoalescingMetricsHandler);
+        app.get("/metrics/limits", this::getLimitMetricsHandler);
+        app.get("/metrics/rateLimits", this::getRateLimitMetricsHandler);
+
+        // Reads that failed in the database answer with an error instead of
+        // an empty result
+        app.exception(DataAccessException.class, SocialMediaController::dataAccessExceptionHandler);
 
         return app;
     }
@@ -65,22 +183,25 @@ public class SocialMediaController {
      * If AccountService returns a null account (meaning posting an Account was
      * unsuccessful), the API will return a 400 message (client error).
      * 
+     * A retry sent with the same "Idempotency-Key" header gets the original
+     * response back instead of registering again (see IdempotencyStore).
+     * 
      * @param ctx   data handler for HTTP requests and responses, provided the
      *              Javalin app
-     * @throws JsonProcessingException  if there's an issue converting JSON
-     *                                  into an object
+     * @return  Completes with the response
+     * @throws IOException  if there's an issue converting JSON into an
+     *                      object
      */
-    private void postRegisterAccountHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
-
-        Account addedAccount = accountService.registerAccount(account);
+    private CompletableFuture<Reply> postRegisterAccountHandler(Context ctx) throws IOException {
+        Account account = JsonUtil.ACCOUNT_READER.readValue(ctx.bodyAsBytes());
 
-        if(addedAccount != null){
-            ctx.json(mapper.writeValueAsString(addedAccount));
-        }else{
-            ctx.status(400);
-        }
+        return respond(accountService.registerAccountAsync(account), addedAccount -> {
+            if(addedAccount != null){
+                return Reply.json(JsonUtil.ACCOUNT_WRITER, addedAccount);
+            }else{
+                return Reply.status(400);
+            }
+        });
     }
 
     /**
@@ -90,22 +211,30 @@ public class SocialMediaController {
      * unsuccessful, such as due to an invalid username or password), the API
      * will return a 401 message (unauthorized error).
      * 
+     * Too many attempts for one username or from one client IP return a 429
+     * message (too many requests) without checking the credentials (see
+     * RateLimits).
+     * 
      * @param ctx   data handler for HTTP requests and responses, provided the
      *              Javalin app
-     * @throws JsonProcessingException  if there's an issue converting JSON
-     *                                  into an object
+     * @return  Completes with the response
+     * @throws IOException  if there's an issue converting JSON into an
+     *                      object
      */
-    private void postLoginAccountHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
-
-        Account legitAccount = accountService.loginAccount(account);
-
-        if(legitAccount != null){
-            ctx.json(mapper.writeValueAsString(legitAccount));
-        }else{
-            ctx.status(401);
+    private CompletableFuture<Reply> postLoginAccountHandler(Context ctx) throws IOException {
+        Account account = JsonUtil.ACCOUNT_READER.readValue(ctx.bodyAsBytes());
+        Reply limited = rateLimits.limitLogin(ctx, account);
+        if(limited != null) {
+            return CompletableFuture.completedFuture(limited);
         }
+
+        return respond(accountService.loginAccountAsync(account), legitAccount -> {
+            if(legitAccount != null){
+                return Reply.json(JsonUtil.ACCOUNT_WRITER, legitAccount);
+            }else{
+                return Reply.status(401);
+            }
+        });
     }
 
 
@@ -114,24 +243,170 @@ public class SocialMediaController {
     /**
      * Handler to retrieve all messages.
      * 
+     * If the "ids" query parameter is given (e.g. "?ids=1,2,3"), only the
+     * messages with those IDs are returned, the same way as
+     * POST /messages/lookup.
+     * 
+     * If the "limit" or "cursor" query parameter is given, only one page of
+     * messages is returned, and a "Link" header points to the next page if
+     * there is one. A malformed limit or cursor returns a 400 message
+     * (client error).
+     * 
+     * Otherwise all messages are returned. If the feed hasn't changed since
+     * it was last served, the cached response is written out; if not, the
+     * messages are streamed to the client as they're read from the database
+     * (unless streaming is turned off) and the response is cached.
+     * 
+     * Either way the response carries an "ETag" header for the current
+     * version of the feed. A client sending it back in "If-None-Match" gets a
+     * 304 message (not modified) if the feed hasn't changed since.
+     * 
      * @param ctx   data handler for HTTP requests and responses, provided the
      *              Javalin app
+     * @throws IOException  if writing the streamed response failed
      */
-    private void getAllMessagesHandler(Context ctx) {
-        List<Message> messages = messageService.getAllMessages();
-        ctx.json(messages);
+    private void getAllMessagesHandler(Context ctx) throws IOException {
+        String ids = ctx.queryParam("ids");
+        if(ids != null) {
+            List<Integer> message_ids;
+            try {
+                message_ids = parseIds(ids);
+            } catch (NumberFormatException e) {
+                ctx.status(400);
+                return;
+            }
+            writeLookup(ctx, message_ids);
+            return;
+        }
+
+        long version = messageService.getFeedVersion();
+        String etag = etag("f" + version);
+
+        if(isPageRequest(ctx)) {
+            MessageCursor cursor;
+            int limit;
+            try {
+                cursor = parseCursor(ctx);
+                limit = parseLimit(ctx);
+            } catch (IllegalArgumentException e) {
+                ctx.status(400);
+                return;
+            }
+
+            if(!isNotModified(ctx, etag)) {
+                writePage(ctx, messageService.getMessagesPage(cursor, limit));
+            }
+            return;
+        }
+
+        if(isNotModified(ctx, etag)) {
+            return;
+        }
+        writeFeed(ctx, "messages", version,
+            consumer -> messageService.streamAllMessages(consumer),
+            () -> messageService.getAllMessages());
     }
 
     /**
      * Handler to retrieve all messages by a single account.
      * 
+     * Supports the same "limit" and "cursor" paging, the same response
+     * caching and streaming, and the same conditional requests as
+     * GET /messages, based on the version of the account's feed.
+     * 
      * @param ctx   data handler for HTTP requests and responses, provided the
      *              Javalin app
+     * @throws IOException  if writing the streamed response failed
      */
-    private void getAllMessagesByAccountHandler(Context ctx) {
+    private void getAllMessagesByAccountHandler(Context ctx) throws IOException {
         int account_id = Integer.parseInt(Objects.requireNonNull(ctx.pathParam("account_id")));
-        List<Message> messages = messageService.getAllMessagesByAccount(account_id);
-        ctx.json(messages);
+        long version = messageService.getAccountFeedVersion(account_id);
+        String etag = etag("a" + account_id + "-" + version);
+
+        if(isPageRequest(ctx)) {
+            MessageCursor cursor;
+            int limit;
+            try {
+                cursor = parseCursor(ctx);
+                limit = parseLimit(ctx);
+            } catch (IllegalArgumentException e) {
+                ctx.status(400);
+                return;
+            }
+
+            if(!isNotModified(ctx, etag)) {
+                writePage(ctx, messageService.getMessagesPageByAccount(account_id, cursor, limit));
+            }
+            return;
+        }
+
+        if(isNotModified(ctx, etag)) {
+            return;
+        }
+        writeFeed(ctx, "accounts/" + account_id, version,
+            consumer -> messageService.streamAllMessagesByAccount(account_id, consumer),
+            () -> messageService.getAllMessagesByAccount(account_id));
+    }
+
+    /**
+     * Handler to retrieve the changes to messages (creates, updates and
+     * deletes) since the "since" token of a previous response, oldest first.
+     * 
+     * The response carries a new token to continue from. A client without a
+     * token, or whose token is too old or from before a restart, gets an
+     * empty response with "resync" set: it should reload the full feed and
+     * continue from the returned token. At most "limit" changes are returned
+     * at a time, and "truncated" is set if there are more. A malformed token
+     * or limit returns a 400 message (client error).
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     * @throws IOException  if there's an issue converting the changes to
+     *                      JSON
+     */
+    private void getMessageChangesHandler(Context ctx) throws IOException {
+        ChangeToken since;
+        int limit;
+        try {
+            String token = ctx.queryParam("since");
+            since = token == null ? null : ChangeToken.decode(token);
+            limit = parseLimit(ctx);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            return;
+        }
+
+        writeJson(ctx, JsonUtil.MESSAGE_CHANGES_WRITER, messageService.getChangesSince(since, limit));
+    }
+
+    /**
+     * Handler for a live Server-Sent Events stream of every change to
+     * messages.
+     * 
+     * Each change is sent as an event named "created", "updated" or
+     * "deleted", whose data is the change as JSON and whose ID is a change
+     * token. A client that falls too far behind is disconnected; it can pick
+     * up what it missed from GET /messages/changes with the ID of the last
+     * event it got.
+     * 
+     * Like any EventSource, clients have to ask for the stream with an
+     * "Accept: text/event-stream" header.
+     * 
+     * @param client    the SSE connection, provided the Javalin app
+     */
+    private void liveMessagesHandler(SseClient client) {
+        subscribe(client, null);
+    }
+
+    /**
+     * Handler for a live Server-Sent Events stream of the changes to one
+     * account's messages, sent the same way as GET /messages/live.
+     * 
+     * @param client    the SSE connection, provided the Javalin app
+     */
+    private void liveMessagesByAccountHandler(SseClient client) {
+        int account_id = Integer.parseInt(Objects.requireNonNull(client.ctx.pathParam("account_id")));
+        subscribe(client, account_id);
     }
 
     /**
@@ -140,15 +415,40 @@ public class SocialMediaController {
      * Even if the message with specified ID doesn't exist (and thus can't be
      * retrieved), the API will return a 200 message (OK).
      * 
+     * A found message carries an "ETag" header for its current version, and
+     * a client sending it back in "If-None-Match" gets a 304 message (not
+     * modified) if the message hasn't changed since. The same ETag can be
+     * sent in "If-Match" to PATCH the message only if it's still at that
+     * version.
+     * 
      * @param ctx   data handler for HTTP requests and responses, provided the
      *              Javalin app
+     * @throws IOException  if there's an issue converting the message to
+     *                      JSON
      */
-    private void getMessageByIdHandler(Context ctx) {
+    private void getMessageByIdHandler(Context ctx) throws IOException {
         int message_id = Integer.parseInt(Objects.requireNonNull(ctx.pathParam("message_id")));
+
+        // Read the version before the message, so a change in between can
+        // only make the ETag look older than the message, never newer
+        Long version = messageService.getMessageVersion(message_id);
+        if(version == null) {
+            ctx.status(200);
+            return;
+        }
+
+        String etag = messageEtag(message_id, version);
+        if(ifNoneMatch(ctx, etag)) {
+            ctx.header(Header.ETAG, etag);
+            ctx.status(304);
+            return;
+        }
+
         Message message = messageService.getMessage(message_id);
 
         if(message != null) {
-            ctx.json(message);
+            ctx.header(Header.ETAG, etag);
+            writeJson(ctx, JsonUtil.MESSAGE_WRITER, message);
         } else {
             ctx.status(200);
         }
@@ -166,22 +466,106 @@ public class SocialMediaController {
      * If MessageService returns a null message (meaning posting an Message was
      * unsuccessful), the API will return a 400 message (client error).
      * 
+     * A retry sent with the same "Idempotency-Key" header gets the original
+     * response back instead of posting the message again (see
+     * IdempotencyStore).
+     * 
+     * An account posting too many messages gets a 429 message (too many
+     * requests) until it slows down (see RateLimits).
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     * @return  Completes with the response
+     * @throws IOException  if there's an issue converting JSON into an
+     *                      object
+     */
+    private CompletableFuture<Reply> postCreateMessageHandler(Context ctx) throws IOException {
+        Message message = JsonUtil.MESSAGE_READER.readValue(ctx.bodyAsBytes());
+        Reply limited = rateLimits.limitMessage(message);
+        if(limited != null) {
+            return CompletableFuture.completedFuture(limited);
+        }
+
+        return respond(messageService.createMessageAsync(message), addedMessage -> {
+            if(addedMessage != null){
+                return Reply.json(JsonUtil.MESSAGE_WRITER, addedMessage);
+            }else{
+                return Reply.status(400);
+            }
+        });
+    }
+
+    /**
+     * Handler for posting many messages at once.
+     * 
+     * The body is either a JSON array of messages or, with a
+     * "Content-Type: application/x-ndjson" header, one message per line.
+     * Every message is validated like in POST /messages, and the valid ones
+     * are inserted in a single transaction. The response lists one result
+     * per message, in order, so messages that were invalid or couldn't be
+     * inserted are reported without failing the rest.
+     * 
+     * A body that isn't a JSON array returns a 400 message (client error),
+     * while an NDJSON line that isn't a message only fails that message.
+     * More than MessageService.MAX_BATCH_SIZE messages return a 413 message
+     * (payload too large).
+     * 
      * @param ctx   data handler for HTTP requests and responses, provided the
      *              Javalin app
-     * @throws JsonProcessingException  if there's an issue converting JSON
-     *                                  into an object
+     * @throws IOException  if there's an issue converting the results to
+     *                      JSON
      */
-    private void postCreateMessageHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(ctx.body(), Message.class);
+    private void postCreateMessagesBatchHandler(Context ctx) throws IOException {
+        List<Message> messages;
+        try {
+            String contentType = ctx.contentType();
+            messages = contentType != null && contentType.contains("ndjson")
+                ? readNdjson(ctx.body())
+                : JsonUtil.MESSAGE_LIST_READER.readValue(ctx.bodyAsBytes());
+        } catch (JsonProcessingException e) {
+            ctx.status(400);
+            return;
+        }
+
+        if(messages == null) {
+            ctx.status(400);
+        } else if(messages.size() > MessageService.MAX_BATCH_SIZE) {
+            ctx.status(413);
+        } else {
+            writeJson(ctx, JsonUtil.MESSAGE_BATCH_RESULTS_WRITER, messageService.createMessages(messages));
+        }
+    }
 
-        Message addedMessage = messageService.createMessage(message);
+    /**
+     * Handler to retrieve many messages by ID in one request. The body is a
+     * JSON array of message IDs.
+     * 
+     * Returns an object with the messages found, in the order their IDs were
+     * given (repeated IDs only once), as "messages", and the IDs that don't
+     * exist as "missing". Cached messages are served from the cache and the
+     * rest are read with a single query. A body that isn't an array of IDs
+     * returns a 400 message (client error), and more than
+     * MessageService.MAX_PAGE_SIZE IDs return a 413 message (payload too
+     * large).
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     * @throws IOException  if there's an issue converting the result to JSON
+     */
+    private void postLookupMessagesHandler(Context ctx) throws IOException {
+        List<Integer> message_ids;
+        try {
+            message_ids = JsonUtil.ID_LIST_READER.readValue(ctx.bodyAsBytes());
+        } catch (JsonProcessingException e) {
+            ctx.status(400);
+            return;
+        }
 
-        if(addedMessage != null){
-            ctx.json(mapper.writeValueAsString(addedMessage));
-        }else{
+        if(message_ids == null || message_ids.contains(null)) {
             ctx.status(400);
+            return;
         }
+        writeLookup(ctx, message_ids);
     }
 
     /**
@@ -193,23 +577,64 @@ public class SocialMediaController {
      * meet these requirements will cancel the PATCH and the API will return a
      * 400 message (client error).
      * 
+     * With an "If-Match" header holding the message's ETag (from
+     * GET /messages/{message_id} or a previous PATCH), the message is only
+     * updated if nobody else has edited it since. If someone has, the API
+     * returns a 412 message (precondition failed) with the current ETag, and
+     * the client should re-read the message and try again. "If-Match: *"
+     * only requires the message to exist. A successful conditional update
+     * carries the new ETag.
+     * 
      * @param ctx   data handler for HTTP requests and responses, provided the
      *              Javalin app
-     * @throws JsonProcessingException  if there's an issue converting JSON
-     *                                  into an object
+     * @return  Completes with the response
+     * @throws IOException  if there's an issue converting JSON into an
+     *                      object
      */
-    private void patchUpdateMessageHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(ctx.body(), Message.class);
+    private CompletableFuture<Reply> patchUpdateMessageHandler(Context ctx) throws IOException {
+        Message message = JsonUtil.MESSAGE_READER.readValue(ctx.bodyAsBytes());
         int message_id = Integer.parseInt(Objects.requireNonNull(ctx.pathParam("message_id")));
-        
-        Message updatedMessage = messageService.updateMessageText(message_id, message);
 
-        if(updatedMessage != null){
-            ctx.json(mapper.writeValueAsString(updatedMessage));
-        }else{
-            ctx.status(400);
+        String ifMatch = ctx.header(Header.IF_MATCH);
+        if(ifMatch != null && !ifMatch.trim().equals("*")) {
+            Long version = parseIfMatch(ifMatch, message_id);
+            if(version == null) {
+                // Not an ETag of this message
+                return CompletableFuture.completedFuture(Reply.status(412));
+            }
+
+            return respond(messageService.updateMessageTextAsync(message_id, message, version), updatedMessage -> {
+                if(updatedMessage != null) {
+                    return Reply.json(JsonUtil.MESSAGE_WRITER, updatedMessage)
+                        .header(Header.ETAG, messageEtag(message_id, version + 1));
+                } else {
+                    return Reply.status(400);
+                }
+            }).exceptionally(e -> {
+                if(!(unwrap(e) instanceof VersionConflictException)) {
+                    throw rethrow(e);
+                }
+                VersionConflictException conflict = (VersionConflictException) unwrap(e);
+                return Reply.status(412).header(Header.ETAG, messageEtag(message_id, conflict.getCurrentVersion()));
+            });
         }
+
+        CompletableFuture<Boolean> exists = ifMatch == null
+            ? CompletableFuture.completedFuture(true)
+            : messageService.getMessageVersionAsync(message_id).thenApply(Objects::nonNull);
+        return exists.thenCompose(found -> {
+            if(!found) {
+                return CompletableFuture.completedFuture(Reply.status(412));
+            }
+
+            return respond(messageService.updateMessageTextAsync(message_id, message), updatedMessage -> {
+                if(updatedMessage != null){
+                    return Reply.json(JsonUtil.MESSAGE_WRITER, updatedMessage);
+                }else{
+                    return Reply.status(400);
+                }
+            });
+        });
     }
 
     /**
@@ -220,15 +645,653 @@ public class SocialMediaController {
      * 
      * @param ctx   data handler for HTTP requests and responses, provided the
      *              Javalin app
+     * @return  Completes with the response
      */
-    private void deleteMessageHandler(Context ctx) {
+    private CompletableFuture<Reply> deleteMessageHandler(Context ctx) {
         int message_id = Integer.parseInt(Objects.requireNonNull(ctx.pathParam("message_id")));
-        Message message = messageService.deleteMessageById(message_id);
 
-        if(message != null) {
-            ctx.json(message);
+        return respond(messageService.deleteMessageByIdAsync(message_id), message -> {
+            if(message != null) {
+                return Reply.json(JsonUtil.MESSAGE_WRITER, message);
+            } else {
+                return Reply.status(200);
+            }
+        });
+    }
+
+
+
+    // FOLLOW HANDLERS //
+    /**
+     * Handler for one account following another.
+     * 
+     * Following an account that's already followed is harmless. If either
+     * account doesn't exist, or an account tries to follow itself, the API
+     * will return a 400 message (client error).
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     * @return  Completes with the response
+     */
+    private CompletableFuture<Reply> postFollowHandler(Context ctx) {
+        int account_id = Integer.parseInt(Objects.requireNonNull(ctx.pathParam("account_id")));
+        int followee_id = Integer.parseInt(Objects.requireNonNull(ctx.pathParam("followee_id")));
+
+        return respond(followService.followAsync(account_id, followee_id), followed -> {
+            if(followed) {
+                return Reply.status(200);
+            } else {
+                return Reply.status(400);
+            }
+        });
+    }
+
+    /**
+     * Handler for one account unfollowing another.
+     * 
+     * Even if the account wasn't following the other, the API will return a
+     * 200 message (OK).
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     * @return  Completes with the response
+     */
+    private CompletableFuture<Reply> deleteFollowHandler(Context ctx) {
+        int account_id = Integer.parseInt(Objects.requireNonNull(ctx.pathParam("account_id")));
+        int followee_id = Integer.parseInt(Objects.requireNonNull(ctx.pathParam("followee_id")));
+
+        return respond(followService.unfollowAsync(account_id, followee_id), unfollowed -> Reply.status(200));
+    }
+
+    /**
+     * Handler to retrieve the IDs of the accounts an account follows.
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     */
+    private void getFollowingHandler(Context ctx) {
+        int account_id = Integer.parseInt(Objects.requireNonNull(ctx.pathParam("account_id")));
+
+        ctx.json(followService.getFollowees(account_id));
+    }
+
+    /**
+     * Handler to retrieve an account's home timeline: the most recent
+     * messages of the accounts it follows, newest first.
+     * 
+     * The "limit" query parameter sets how many messages are returned (50 by
+     * default, 200 at most). A malformed limit returns a 400 message (client
+     * error).
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     * @throws IOException  if there's an issue converting the messages to
+     *                      JSON
+     */
+    private void getHomeTimelineHandler(Context ctx) throws IOException {
+        int account_id = Integer.parseInt(Objects.requireNonNull(ctx.pathParam("account_id")));
+
+        int limit;
+        try {
+            limit = parseLimit(ctx);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            return;
+        }
+
+        writeJson(ctx, JsonUtil.MESSAGE_LIST_WRITER, followService.getHomeTimeline(account_id, limit));
+    }
+
+
+
+    // ERROR HANDLERS //
+    /**
+     * Handler for reads that failed in the database, from any handler.
+     * 
+     * If no database connection freed up in time, the API returns a 503
+     * message (service unavailable) with a "Retry-After" header, and
+     * otherwise a 500 message (server error). A streamed feed whose first
+     * bytes were already sent can't change its status anymore; its JSON
+     * array is left unclosed, so clients can't mistake it for the whole feed.
+     * 
+     * @param e     The failure
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     */
+    private static void dataAccessExceptionHandler(DataAccessException e, Context ctx) {
+        LOGGER.warn("Database read for " + ctx.method() + " " + ctx.path() + " failed: " + e.getMessage());
+        if(ctx.res().isCommitted()) {
+            return;
+        }
+
+        // Drop whatever part of a streamed feed is still buffered
+        ctx.res().resetBuffer();
+        if(e.isTimeout()) {
+            ctx.header(Header.RETRY_AFTER, "1");
+            ctx.status(503);
         } else {
-            ctx.status(200);
+            ctx.status(500);
+        }
+    }
+
+
+
+    // METRICS HANDLERS //
+    /**
+     * Handler to retrieve statistics of the database connection pool, such
+     * as active, idle and waiting connections and borrow latency.
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     */
+    private void getPoolMetricsHandler(Context ctx) {
+        ctx.json(ConnectionPool.getStats());
+    }
+
+    /**
+     * Handler to retrieve hit, miss and eviction counts of the in-memory
+     * caches.
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     */
+    private void getCacheMetricsHandler(Context ctx) {
+        List<CacheMetrics> metrics = messageService.getCacheMetrics();
+        metrics.add(followService.getCacheMetrics());
+        metrics.add(feedResponseCache.getMetrics());
+        metrics.add(idempotencyStore.getMetrics());
+
+        ctx.json(metrics);
+    }
+
+
+
+    /**
+     * Handler to retrieve statistics of the live streams, such as the number
+     * of subscribers and of slow subscribers dropped.
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     */
+    private void getLiveMetricsHandler(Context ctx) {
+        ctx.json(messageService.getMessageBus().getStats());
+    }
+
+
+
+    /**
+     * Handler to retrieve the cost of fanning messages out to home timelines
+     * on write and merging them on read.
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     */
+    private void getTimelineMetricsHandler(Context ctx) {
+        ctx.json(followService.getFanOutStats());
+    }
+
+
+
+    /**
+     * Handler to retrieve how new messages have been grouped into commits.
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     */
+    private void getWriteMetricsHandler(Context ctx) {
+        ctx.json(messageService.getGroupCommitStats());
+    }
+
+
+
+    /**
+     * Handler to retrieve how often conditional edits conflicted.
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     */
+    private void getEditMetricsHandler(Context ctx) {
+        ctx.json(messageService.getEditStats());
+    }
+
+
+
+    /**
+     * Handler to retrieve how busy the DatabaseExecutor is and how much work
+     * it turned away.
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     */
+    private void getExecutorMetricsHandler(Context ctx) {
+        ctx.json(DatabaseExecutor.getStats());
+    }
+
+
+
+    /**
+     * Handler to retrieve how many identical concurrent reads shared a
+     * query instead of running their own.
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     */
+    private void getCoalescingMetricsHandler(Context ctx) {
+        ctx.json(messageService.getSingleFlightStats());
+    }
+
+
+
+    /**
+     * Handler to retrieve the current concurrency limits of reads and writes
+     * and how many requests they turned away.
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     */
+    private void getLimitMetricsHandler(Context ctx) {
+        ctx.json(loadShedder.getStats());
+    }
+
+
+
+    /**
+     * Handler to retrieve how many requests each rate limit allowed and
+     * refused.
+     * 
+     * @param ctx   data handler for HTTP requests and responses, provided the
+     *              Javalin app
+     */
+    private void getRateLimitMetricsHandler(Context ctx) {
+        ctx.json(rateLimits.getStats());
+    }
+
+
+
+    // LIVE STREAM HELPERS //
+    /**
+     * Subscribes an SSE connection to the message bus and keeps it open
+     * until the client goes away or is dropped for falling behind.
+     * 
+     * @param client        the SSE connection
+     * @param account_id    ID of the account to follow, or "null" for every
+     *                      change
+     */
+    private void subscribe(SseClient client, Integer account_id) {
+        MessageBus.Subscription subscription = messageService.getMessageBus().subscribe(account_id, new SseSink(client));
+        client.onClose(subscription::cancel);
+        client.keepAlive();
+    }
+
+    /**
+     * Writes bus events to an SSE connection.
+     */
+    private static final class SseSink implements MessageBus.Sink {
+        private final SseClient client;
+
+        SseSink(SseClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public void send(String id, String event, String json) {
+            client.sendEvent(event, json, id);
+        }
+
+        @Override
+        public void heartbeat() {
+            client.sendComment("heartbeat");
+        }
+
+        /**
+         * Aborts the connection before closing the stream: closing alone
+         * leaves a write stalled on the client blocked until Jetty's idle
+         * timeout, holding one of the MessageBus's delivery threads.
+         */
+        @Override
+        public void close() {
+            Request request = Request.getBaseRequest(client.ctx.req());
+            if(request != null) {
+                request.getHttpChannel().abort(new IOException("Live subscriber dropped"));
+            }
+            client.close();
+        }
+    }
+
+
+
+    // ASYNC HELPERS //
+    /**
+     * Turns an AsyncHandler into a Javalin handler that hands its future to
+     * ctx.future(), so the request thread is released while the future's
+     * database work runs on the DatabaseExecutor, and sends the Reply it
+     * completes with.
+     * 
+     * If the executor was too busy to take the work or it didn't finish in
+     * time (see DatabaseExecutor.withTimeout()), the API returns a 503
+     * message (service unavailable) with a "Retry-After" header instead, and
+     * whatever the work replies with later is dropped. Any other failure is
+     * left to Javalin's exception handling.
+     */
+    private static Handler async(AsyncHandler handler) {
+        return ctx -> {
+            CompletableFuture<Reply> reply = DatabaseExecutor.withTimeout(handler.handle(ctx));
+            ctx.future(() -> reply.handle((response, e) -> {
+                if(e == null) {
+                    response.applyTo(ctx);
+                    return null;
+                }
+                if(!DatabaseExecutor.isOverloaded(e)) {
+                    throw rethrow(e);
+                }
+                ctx.header(Header.RETRY_AFTER, "1");
+                ctx.status(503);
+                return null;
+            }));
+        };
+    }
+
+    /**
+     * A callback building the response for a service result.
+     */
+    @FunctionalInterface
+    private interface ResultHandler<T> {
+        Reply apply(T result) throws IOException;
+    }
+
+    /**
+     * @return  Completes with the handler's response for the service's
+     *          result, or exceptionally if the service or the handler failed
+     */
+    private static <T> CompletableFuture<Reply> respond(CompletableFuture<T> result, ResultHandler<T> handler) {
+        return result.thenApply(value -> {
+            try {
+                return handler.apply(value);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * @return  What a future failed with, without the CompletionException
+     *          that dependent stages wrap it in
+     */
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * @return  The failure, as an exception that can be thrown from a stage
+     *          to fail the next one too
+     */
+    private static CompletionException rethrow(Throwable e) {
+        return e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+    }
+
+
+
+    // CONDITIONAL REQUEST HELPERS //
+    /**
+     * Builds a strong ETag from a resource's version. The service's version
+     * epoch is included so ETags handed out by an earlier run, whose counters
+     * started from the same numbers, never match.
+     * 
+     * @param version   Resource kind, ID and version, e.g. "m12-40"
+     * 
+     * @return  The quoted ETag
+     */
+    private String etag(String version) {
+        return "\"" + Long.toHexString(messageService.getVersionEpoch()) + "-" + version + "\"";
+    }
+
+    /**
+     * @return  ETag of a message at a version. Versions are stored with the
+     *          messages, so unlike feed ETags these stay valid across
+     *          restarts.
+     */
+    private static String messageEtag(int message_id, long version) {
+        return "\"m" + message_id + "-r" + version + "\"";
+    }
+
+    /**
+     * @return  Version of the message named by the first ETag in an
+     *          "If-Match" header that's one of its ETags, or "null" if there
+     *          is none
+     */
+    private static Long parseIfMatch(String header, int message_id) {
+        String prefix = "\"m" + message_id + "-r";
+        for(String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            // If-Match uses strong comparison, so weak ETags never match
+            if(candidate.startsWith(prefix) && candidate.endsWith("\"")) {
+                try {
+                    return Long.parseLong(candidate.substring(prefix.length(), candidate.length() - 1));
+                } catch (NumberFormatException e) {
+                    // Not one of our ETags, try the next one
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the "ETag" header and, if the client already has that version of
+     * the resource, answers with a 304 message (not modified).
+     * 
+     * @return  Whether the 304 was sent and the handler should stop
+     */
+    private static boolean isNotModified(Context ctx, String etag) {
+        ctx.header(Header.ETAG, etag);
+        if(ifNoneMatch(ctx, etag)) {
+            ctx.status(304);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return  Whether the "If-None-Match" header lists the ETag
+     */
+    private static boolean ifNoneMatch(Context ctx, String etag) {
+        String header = ctx.header(Header.IF_NONE_MATCH);
+        if(header == null) {
+            return false;
+        }
+
+        for(String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            // If-None-Match uses weak comparison, so ignore a W/ prefix
+            if(candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if(candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+
+    // PAGING HELPERS //
+    /**
+     * @return  Whether the client asked for a single page of messages
+     */
+    private static boolean isPageRequest(Context ctx) {
+        return ctx.queryParam("limit") != null || ctx.queryParam("cursor") != null;
+    }
+
+    /**
+     * @return  Cursor from the "cursor" query parameter, or "null" for the
+     *          first page
+     * 
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    private static MessageCursor parseCursor(Context ctx) {
+        String token = ctx.queryParam("cursor");
+        return token == null ? null : MessageCursor.decode(token);
+    }
+
+    /**
+     * @return  Page size from the "limit" query parameter, or the default
+     *          page size if it's missing
+     * 
+     * @throws IllegalArgumentException if the limit isn't a positive number
+     */
+    private static int parseLimit(Context ctx) {
+        String limit = ctx.queryParam("limit");
+        if(limit == null) {
+            return MessageService.DEFAULT_PAGE_SIZE;
+        }
+
+        int parsed = Integer.parseInt(limit);
+        if(parsed <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + limit);
+        }
+        return parsed;
+    }
+
+    /**
+     * Writes a page of messages as a JSON list, adding a "Link" header to the
+     * next page if there is one.
+     */
+    private static void writePage(Context ctx, MessagePage page) throws IOException {
+        if(page.hasNext()) {
+            String next = ctx.path() + "?limit=" + page.getMessages().size()
+                + "&cursor=" + page.getNextCursor().encode();
+            ctx.header("Link", "<" + next + ">; rel=\"next\"");
+        }
+        writeJson(ctx, JsonUtil.MESSAGE_LIST_WRITER, page.getMessages());
+    }
+
+
+
+    // JSON HELPERS //
+    /**
+     * Serializes a value with a pre-built writer straight to bytes and sets
+     * them as the response, skipping the intermediate String.
+     * 
+     * @param ctx       data handler for HTTP requests and responses, provided
+     *                  the Javalin app
+     * @param writer    Writer for the value's type
+     * @param value     Value to write
+     * @throws IOException  if there's an issue converting the value to JSON
+     */
+    private static void writeJson(Context ctx, ObjectWriter writer, Object value) throws IOException {
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        ctx.result(writer.writeValueAsBytes(value));
+    }
+
+    /**
+     * @return  Message IDs from a comma-separated list
+     * 
+     * @throws NumberFormatException    if an ID isn't a number
+     */
+    private static List<Integer> parseIds(String ids) {
+        List<Integer> message_ids = new ArrayList<>();
+        for(String id : ids.split(",")) {
+            if(!id.isBlank()) {
+                message_ids.add(Integer.parseInt(id.trim()));
+            }
+        }
+        return message_ids;
+    }
+
+    /**
+     * Looks up messages by ID and writes them out, or a 413 message if there
+     * are too many IDs.
+     */
+    private void writeLookup(Context ctx, List<Integer> message_ids) throws IOException {
+        if(message_ids.size() > MessageService.MAX_PAGE_SIZE) {
+            ctx.status(413);
+            return;
+        }
+        writeJson(ctx, JsonUtil.MESSAGE_LOOKUP_WRITER, messageService.getMessages(message_ids));
+    }
+
+    /**
+     * Reads newline-delimited JSON messages, skipping blank lines.
+     * 
+     * @param body  One JSON message per line
+     * 
+     * @return  The messages in order, with "null" for each line that isn't a
+     *          valid message
+     */
+    private static List<Message> readNdjson(String body) {
+        List<Message> messages = new ArrayList<>();
+        for(String line : body.split("\r?\n")) {
+            if(line.isBlank()) {
+                continue;
+            }
+
+            try {
+                messages.add(JsonUtil.MESSAGE_READER.readValue(line));
+            } catch (JsonProcessingException e) {
+                messages.add(null);
+            }
+        }
+        return messages;
+    }
+
+
+
+    // STREAMING HELPERS //
+    /**
+     * A query whose messages can be streamed to a consumer.
+     */
+    @FunctionalInterface
+    private interface MessageStream {
+        void forEach(MessageConsumer consumer) throws IOException;
+    }
+
+    /**
+     * Writes a full feed as a JSON list, from the response cache if the feed
+     * hasn't changed since the cached response was built.
+     * 
+     * Otherwise the feed is streamed, serializing each message straight to
+     * the output stream as it's read so memory use doesn't grow with the
+     * number of messages, and a copy of the response is cached if it's small
+     * enough. With streaming turned off the feed is read into a list and
+     * serialized in one go instead.
+     * 
+     * @param ctx       data handler for HTTP requests and responses, provided
+     *                  the Javalin app
+     * @param key       Key of the feed in the response cache
+     * @param version   Current version of the feed, read before querying it
+     * @param stream    Query streaming the feed's messages
+     * @param list      Query reading the feed's messages into a list
+     * @throws IOException  if writing the response failed
+     */
+    private void writeFeed(Context ctx, String key, long version, MessageStream stream,
+                           Supplier<List<Message>> list) throws IOException {
+        FeedResponseCache.EncodedFeed cached = feedResponseCache.get(key, version);
+        if(cached != null) {
+            cached.writeTo(ctx);
+            return;
+        }
+
+        if(!STREAM_FEEDS) {
+            byte[] json = JsonUtil.MESSAGE_LIST_WRITER.writeValueAsBytes(list.get());
+            feedResponseCache.put(key, version, json);
+
+            ctx.contentType(ContentType.APPLICATION_JSON);
+            ctx.result(json);
+            return;
+        }
+
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        FeedResponseCache.Capture capture = feedResponseCache.capture(ctx.outputStream());
+
+        JsonGenerator generator = JsonUtil.MAPPER.createGenerator(capture);
+        generator.writeStartArray();
+        stream.forEach(generator::writeObject);
+        generator.writeEndArray();
+        generator.flush();
+
+        byte[] json = capture.captured();
+        if(json != null) {
+            feedResponseCache.put(key, version, json);
         }
     }
 }
\ No newline at end of file
@@ -6,7 +6,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import Model.Account;
-import Util.ConnectionUtil;
+import Util.ConnectionPool;
 
 /**
  * This is a Data Access Object that manages the interactions Java objects of
@@ -26,9 +26,11 @@ public class AccountDAO {
      * @return  The successfully logged in account, or "null" if login failed
      */
     public Account getAccount(Account account) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
 
         try {
+            connection = ConnectionPool.getConnection();
+
             // Make SQL statement and execute it
             String sql = "SELECT * FROM account WHERE username = ? AND password = ?";
             PreparedStatement ps = connection.prepareStatement(sql);
@@ -49,6 +51,8 @@ public class AccountDAO {
             }
         } catch (SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionPool.close(connection);
         }
 
         return null;    // Occurs if retrieval failed
@@ -68,8 +72,11 @@ public class AccountDAO {
      *          failed
      */
     public Account insertAccount(Account account) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
+
         try {
+            connection = ConnectionPool.getConnection();
+
             // Make SQL statement and execute it
             String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
             PreparedStatement ps = connection.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS);
@@ -94,6 +101,8 @@ public class AccountDAO {
             }
         } catch (SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionPool.close(connection);
         }
 
         return null;    // Occurs if registration failed
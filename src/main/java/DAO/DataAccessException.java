@@ -0,0 +1,29 @@
+package DAO;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+/**
+ * Thrown by reads that failed in the database, instead of returning an
+ * empty or partial result that would look like real data and could be
+ * cached as such.
+ */
+public class DataAccessException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param cause     What the database or the connection pool threw
+     */
+    public DataAccessException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    /**
+     * @return  Whether it failed because no connection freed up in time,
+     *          which is worth retrying later, rather than because of the
+     *          query
+     */
+    public boolean isTimeout() {
+        return getCause() instanceof SQLTimeoutException;
+    }
+}
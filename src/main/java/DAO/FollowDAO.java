@@ -0,0 +1,191 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import Util.ConnectionPool;
+
+/**
+ * This is a Data Access Object that manages the SQL database table "follows",
+ * which records which accounts follow which.
+ *
+ * The database table "follows" has the columns:
+ * follower_id      int         ID of the account following, part of the
+ *                              primary key
+ * followee_id      int         ID of the account being followed, part of the
+ *                              primary key
+ * followed_on      bigint      Time the follow was made, in milliseconds
+ *
+ * The table has no foreign keys to "account", so that the account table can
+ * still be dropped and recreated on its own. Follows are only inserted
+ * between existing accounts instead, and ConnectionUtil.resetTestDatabase()
+ * drops the table along with the account table.
+ *
+ * Operations that fail in the database throw a DataAccessException instead
+ * of returning no follows or "false", so a failure is never cached as an
+ * empty follow graph.
+ */
+public class FollowDAO {
+    // CREATE OPERATIONS //
+    /**
+     * Makes one account follow another. Following an account twice is
+     * harmless.
+     *
+     * @param follower_id   ID of the account following
+     * @param followee_id   ID of the account to follow
+     *
+     * @return  Whether the follow exists now, "false" if either account
+     *          doesn't exist
+     * @throws DataAccessException  if the insert failed
+     */
+    public boolean insertFollow(int follower_id, int followee_id) {
+        Connection connection = null;
+
+        try {
+            connection = ConnectionPool.getConnection();
+
+            // Only insert if both accounts exist
+            String sql = "MERGE INTO follows (follower_id, followee_id, followed_on) KEY (follower_id, followee_id) "
+                + "SELECT follower.account_id, followee.account_id, ? FROM account follower, account followee "
+                + "WHERE follower.account_id = ? AND followee.account_id = ?";
+            PreparedStatement ps = connection.prepareStatement(sql);
+
+            ps.setLong(1, System.currentTimeMillis());
+            ps.setInt(2, follower_id);
+            ps.setInt(3, followee_id);
+
+            return ps.executeUpdate() > 0;
+        } catch (SQLException e) {
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
+        }
+    }
+
+
+
+    // READ OPERATIONS //
+    /**
+     * Gets the accounts an account follows.
+     *
+     * @param follower_id   ID of the account following
+     *
+     * @return  IDs of the followed accounts
+     * @throws DataAccessException  if the query failed
+     */
+    public List<Integer> getFolloweeIds(int follower_id) {
+        return getIds("SELECT followee_id FROM follows WHERE follower_id = ?", follower_id);
+    }
+
+
+
+    /**
+     * Gets the accounts following an account.
+     *
+     * @param followee_id   ID of the followed account
+     *
+     * @return  IDs of the following accounts
+     * @throws DataAccessException  if the query failed
+     */
+    public List<Integer> getFollowerIds(int followee_id) {
+        return getIds("SELECT follower_id FROM follows WHERE followee_id = ?", followee_id);
+    }
+
+
+
+    /**
+     * Counts the accounts following an account.
+     *
+     * @param followee_id   ID of the followed account
+     *
+     * @return  Number of followers
+     * @throws DataAccessException  if the query failed
+     */
+    public int countFollowers(int followee_id) {
+        Connection connection = null;
+
+        try {
+            connection = ConnectionPool.getConnection();
+
+            // Make SQL statement and execute it
+            String sql = "SELECT COUNT(*) FROM follows WHERE followee_id = ?";
+            PreparedStatement ps = connection.prepareStatement(sql);
+
+            ps.setInt(1, followee_id);
+
+            ResultSet rs = ps.executeQuery();
+            if(rs.next()) {
+                return rs.getInt(1);
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
+        }
+
+        return 0;
+    }
+
+
+
+    // DELETE OPERATIONS //
+    /**
+     * Makes one account stop following another.
+     *
+     * @param follower_id   ID of the account following
+     * @param followee_id   ID of the account to unfollow
+     *
+     * @return  Whether there was a follow to delete
+     * @throws DataAccessException  if the delete failed
+     */
+    public boolean deleteFollow(int follower_id, int followee_id) {
+        Connection connection = null;
+
+        try {
+            connection = ConnectionPool.getConnection();
+
+            // Make SQL statement and execute it
+            String sql = "DELETE FROM follows WHERE follower_id = ? AND followee_id = ?";
+            PreparedStatement ps = connection.prepareStatement(sql);
+
+            ps.setInt(1, follower_id);
+            ps.setInt(2, followee_id);
+
+            return ps.executeUpdate() > 0;
+        } catch (SQLException e) {
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
+        }
+    }
+
+
+
+    // HELPERS //
+    private List<Integer> getIds(String sql, int id) {
+        Connection connection = null;
+        List<Integer> ids = new ArrayList<>();
+
+        try {
+            connection = ConnectionPool.getConnection();
+
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setInt(1, id);
+
+            ResultSet rs = ps.executeQuery();
+            while(rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
+        }
+
+        return ids;
+    }
+}
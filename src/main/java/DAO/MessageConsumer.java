@@ -0,0 +1,20 @@
+package DAO;
+
+import java.io.IOException;
+
+import Model.Message;
+
+/**
+ * Receives messages one at a time as they are read from the database, so a
+ * large result never has to be held in memory all at once.
+ */
+@FunctionalInterface
+public interface MessageConsumer {
+    /**
+     * @param message   The next message read from the database
+     * 
+     * @throws IOException  if the message couldn't be written out, which
+     *                      stops the query
+     */
+    void accept(Message message) throws IOException;
+}
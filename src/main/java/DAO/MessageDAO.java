@@ -1,14 +1,21 @@
 package DAO;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import Model.Message;
-import Util.ConnectionUtil;
+import Model.MessageCursor;
+import Model.MessagePage;
+import Util.ConnectionPool;
 
 /**
  * This is a Data Access Object that manages the interactions Java objects of
@@ -21,8 +28,38 @@ import Util.ConnectionUtil;
  *                                      account who posted message
  * message_text         varchar(255)    Text of message
  * time_posted_epoch    bigint          Time message was posted
+ * version              bigint          Number of times the message was
+ *                                      edited, for optimistic concurrency
+ *                                      control (added by migration 4)
+ * 
+ * Reads, edits and deletes that fail in the database throw a
+ * DataAccessException instead of returning an empty result or "null", so a
+ * failure is never served or cached as if there were no messages.
  */
 public class MessageDAO {
+    /** Rows fetched at a time when streaming messages */
+    private static final int STREAM_FETCH_SIZE = 100;
+    /** Inserts sent to the database at a time when inserting many messages */
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    /**
+     * The page after a cursor. The leading "time_posted_epoch >= ?" bounds a
+     * range seek on message_feed_idx; H2 can't seek on the equivalent
+     * "a > ? OR (a = ? AND b > ?)" and scans the whole index instead.
+     */
+    static final String PAGE_AFTER_SQL = "SELECT * FROM message "
+        + "WHERE time_posted_epoch >= ? AND (time_posted_epoch > ? OR message_id > ?) "
+        + "ORDER BY time_posted_epoch, message_id LIMIT ?";
+    /**
+     * The page after a cursor by one account, seeking on
+     * message_account_feed_idx. Ordering by the whole index key, posted_by
+     * included, lets H2 stop after one page instead of sorting every later
+     * message by the account.
+     */
+    static final String ACCOUNT_PAGE_AFTER_SQL = "SELECT * FROM message "
+        + "WHERE posted_by = ? AND time_posted_epoch >= ? AND (time_posted_epoch > ? OR message_id > ?) "
+        + "ORDER BY posted_by, time_posted_epoch, message_id LIMIT ?";
+
     // CREATE OPERATIONS //
     /**
      * This creates/inserts a new message into the "message" database table.
@@ -36,8 +73,11 @@ public class MessageDAO {
      *          failed
      */
     public Message insertMessage(Message message) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
+
         try {
+            connection = ConnectionPool.getConnection();
+
             // Make SQL statement and execute it
             String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
             PreparedStatement ps = connection.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS);
@@ -64,6 +104,8 @@ public class MessageDAO {
             }
         } catch (SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionPool.close(connection);
         }
 
         return null;    // Occurs if creation failed
@@ -71,19 +113,95 @@ public class MessageDAO {
 
 
 
+    /**
+     * Inserts many messages at once, in a single transaction, sending the
+     * inserts to the database in JDBC batches of INSERT_BATCH_SIZE.
+     * 
+     * Messages whose poster doesn't exist are skipped instead of failing the
+     * whole batch. If the database rejects the batch anyway, the transaction
+     * is rolled back and no message is inserted.
+     * 
+     * @param messages  The new messages being created
+     * 
+     * @return  A list in the same order as messages, holding each created
+     *          message, or "null" where a message wasn't created. Every
+     *          entry is "null" if the batch failed.
+     */
+    public List<Message> insertMessages(List<Message> messages) {
+        Connection connection = null;
+        List<Message> created = new ArrayList<>(Collections.nCopies(messages.size(), (Message) null));
+        if(messages.isEmpty()) {
+            return created;
+        }
+
+        try {
+            connection = ConnectionPool.getConnection();
+            connection.setAutoCommit(false);
+
+            try {
+                Set<Integer> posters = selectExistingAccountIds(connection, messages);
+
+                String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)";
+                PreparedStatement ps = connection.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS);
+
+                // Positions of the messages in the current batch
+                List<Integer> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+                for(int i = 0; i < messages.size(); i++) {
+                    Message message = messages.get(i);
+                    if(!posters.contains(message.getPosted_by())) {
+                        continue;
+                    }
+
+                    ps.setInt(1, message.getPosted_by());
+                    ps.setString(2, message.getMessage_text());
+                    ps.setLong(3, message.getTime_posted_epoch());
+                    ps.addBatch();
+                    batch.add(i);
+
+                    if(batch.size() == INSERT_BATCH_SIZE) {
+                        executeInsertBatch(ps, messages, batch, created);
+                    }
+                }
+                if(!batch.isEmpty()) {
+                    executeInsertBatch(ps, messages, batch, created);
+                }
+
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                Collections.fill(created, null);
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionPool.close(connection);
+        }
+
+        return created;
+    }
+
+
+
     // READ OPERATIONS //
     /**
      * Gets all messages in chronological post order.
      * 
      * @return  Arraylist of all messages
+     * 
+     * @throws DataAccessException  if the query failed
      */
     public List<Message> getAllMessages() {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
         List<Message> messages = new ArrayList<>();
 
         try {
+            connection = ConnectionPool.getConnection();
+
             // Make SQL statement and execute it
-            String sql = "SELECT * FROM message ORDER BY time_posted_epoch";
+            String sql = "SELECT * FROM message ORDER BY time_posted_epoch, message_id";
             PreparedStatement ps = connection.prepareStatement(sql);
 
             ResultSet rs = ps.executeQuery();
@@ -99,7 +217,9 @@ public class MessageDAO {
                 messages.add(message);
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
         }
 
         return messages;
@@ -113,14 +233,18 @@ public class MessageDAO {
      * @param account_id    ID of the account that we want all messages from
      * 
      * @return  Arraylist of all messages by one account
+     * 
+     * @throws DataAccessException  if the query failed
      */
     public List<Message> getAllMessagesByAccountId(int account_id) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
         List<Message> messages = new ArrayList<>();
 
         try {
+            connection = ConnectionPool.getConnection();
+
             // Make SQL statement and execute it
-            String sql = "SELECT * FROM message WHERE posted_by = ? ORDER BY time_posted_epoch";
+            String sql = "SELECT * FROM message WHERE posted_by = ? ORDER BY time_posted_epoch, message_id";
             PreparedStatement ps = connection.prepareStatement(sql);
 
             ps.setInt(1, account_id);
@@ -138,7 +262,217 @@ public class MessageDAO {
                 messages.add(message);
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
+        }
+
+        return messages;
+    }
+
+
+
+    /**
+     * Reads all messages in chronological post order, handing each one to
+     * the consumer as soon as it is read instead of collecting them in a
+     * list. The connection is held until the consumer has seen every
+     * message.
+     * 
+     * @param consumer  Receives each message in order
+     * 
+     * @throws IOException          if the consumer failed to handle a
+     *                              message
+     * @throws DataAccessException  if the query failed
+     */
+    public void streamAllMessages(MessageConsumer consumer) throws IOException {
+        Connection connection = null;
+
+        try {
+            connection = ConnectionPool.getConnection();
+
+            // Make SQL statement and execute it
+            String sql = "SELECT * FROM message ORDER BY time_posted_epoch, message_id";
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+
+            streamResults(ps.executeQuery(), consumer);
+        } catch (SQLException e) {
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
+        }
+    }
+
+
+
+    /**
+     * Reads all messages in chronological post order by one account, handing
+     * each one to the consumer as soon as it is read.
+     * 
+     * @param account_id    ID of the account that we want all messages from
+     * @param consumer      Receives each message in order
+     * 
+     * @throws IOException          if the consumer failed to handle a
+     *                              message
+     * @throws DataAccessException  if the query failed
+     */
+    public void streamAllMessagesByAccountId(int account_id, MessageConsumer consumer) throws IOException {
+        Connection connection = null;
+
+        try {
+            connection = ConnectionPool.getConnection();
+
+            // Make SQL statement and execute it
+            String sql = "SELECT * FROM message WHERE posted_by = ? ORDER BY time_posted_epoch, message_id";
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+
+            ps.setInt(1, account_id);
+
+            streamResults(ps.executeQuery(), consumer);
+        } catch (SQLException e) {
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
+        }
+    }
+
+
+
+    /**
+     * Gets one page of messages in chronological post order, starting just
+     * after the cursor.
+     * 
+     * @param after     Cursor to start after, or "null" for the first page
+     * @param limit     Maximum number of messages on the page
+     * 
+     * @return  Page of messages, with the cursor of the next page if there
+     *          are more messages
+     * 
+     * @throws DataAccessException  if the query failed
+     */
+    public MessagePage getMessagesPage(MessageCursor after, int limit) {
+        Connection connection = null;
+
+        try {
+            connection = ConnectionPool.getConnection();
+
+            // Make SQL statement and execute it
+            PreparedStatement ps;
+            if(after == null) {
+                String sql = "SELECT * FROM message ORDER BY time_posted_epoch, message_id LIMIT ?";
+                ps = connection.prepareStatement(sql);
+
+                ps.setInt(1, limit + 1);
+            } else {
+                ps = connection.prepareStatement(PAGE_AFTER_SQL);
+
+                ps.setLong(1, after.getTime_posted_epoch());
+                ps.setLong(2, after.getTime_posted_epoch());
+                ps.setInt(3, after.getMessage_id());
+                ps.setInt(4, limit + 1);
+            }
+
+            return readPage(ps.executeQuery(), limit);
+        } catch (SQLException e) {
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
+        }
+    }
+
+
+
+    /**
+     * Gets one page of messages in chronological post order by one account,
+     * starting just after the cursor.
+     * 
+     * @param account_id    ID of the account that we want messages from
+     * @param after         Cursor to start after, or "null" for the first
+     *                      page
+     * @param limit         Maximum number of messages on the page
+     * 
+     * @return  Page of messages by one account, with the cursor of the next
+     *          page if there are more messages
+     * 
+     * @throws DataAccessException  if the query failed
+     */
+    public MessagePage getMessagesPageByAccountId(int account_id, MessageCursor after, int limit) {
+        Connection connection = null;
+
+        try {
+            connection = ConnectionPool.getConnection();
+
+            // Make SQL statement and execute it
+            PreparedStatement ps;
+            if(after == null) {
+                String sql = "SELECT * FROM message WHERE posted_by = ? "
+                    + "ORDER BY posted_by, time_posted_epoch, message_id LIMIT ?";
+                ps = connection.prepareStatement(sql);
+
+                ps.setInt(1, account_id);
+                ps.setInt(2, limit + 1);
+            } else {
+                ps = connection.prepareStatement(ACCOUNT_PAGE_AFTER_SQL);
+
+                ps.setInt(1, account_id);
+                ps.setLong(2, after.getTime_posted_epoch());
+                ps.setLong(3, after.getTime_posted_epoch());
+                ps.setInt(4, after.getMessage_id());
+                ps.setInt(5, limit + 1);
+            }
+
+            return readPage(ps.executeQuery(), limit);
+        } catch (SQLException e) {
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
+        }
+    }
+
+
+
+    /**
+     * Gets the most recent messages by one account, newest first.
+     * 
+     * @param account_id    ID of the account that we want messages from
+     * @param limit         Maximum number of messages
+     * 
+     * @return  Arraylist of up to limit messages by one account, newest first
+     * 
+     * @throws DataAccessException  if the query failed
+     */
+    public List<Message> getRecentMessagesByAccountId(int account_id, int limit) {
+        Connection connection = null;
+        List<Message> messages = new ArrayList<>();
+
+        try {
+            connection = ConnectionPool.getConnection();
+
+            // Make SQL statement and execute it
+            String sql = "SELECT * FROM message WHERE posted_by = ? "
+                + "ORDER BY time_posted_epoch DESC, message_id DESC LIMIT ?";
+            PreparedStatement ps = connection.prepareStatement(sql);
+
+            ps.setInt(1, account_id);
+            ps.setInt(2, limit);
+
+            ResultSet rs = ps.executeQuery();
+
+
+            // Store all retrieved messages in a list
+            while(rs.next()){
+                Message message = new Message(
+                    rs.getInt(1),
+                    rs.getInt(2),
+                    rs.getString(3),
+                    rs.getLong(4));
+                messages.add(message);
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
         }
 
         return messages;
@@ -151,36 +485,108 @@ public class MessageDAO {
      * 
      * @param message_id    ID of the message that we want
      * 
-     * @return  Singular message with the specified ID, or "null" if retrieval
-     *          failed
+     * @return  Singular message with the specified ID, or "null" if there's
+     *          no such message
+     * 
+     * @throws DataAccessException  if the query failed
      */
     public Message getMessageById(int message_id) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
 
         try {
+            connection = ConnectionPool.getConnection();
+
+            return selectMessageById(connection, message_id);
+        } catch (SQLException e) {
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
+        }
+    }
+
+
+
+    /**
+     * Gets the current version of a message.
+     * 
+     * @param message_id    ID of the message
+     * 
+     * @return  Version of the message, or "null" if there's no such message
+     * 
+     * @throws DataAccessException  if the query failed
+     */
+    public Long getMessageVersionById(int message_id) {
+        Connection connection = null;
+
+        try {
+            connection = ConnectionPool.getConnection();
+
             // Make SQL statement and execute it
-            String sql = "SELECT * FROM message WHERE message_id = ?";
+            String sql = "SELECT version FROM message WHERE message_id = ?";
             PreparedStatement ps = connection.prepareStatement(sql);
 
             ps.setInt(1, message_id);
 
+            ResultSet rs = ps.executeQuery();
+            if(rs.next()) {
+                return rs.getLong(1);
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
+        }
+
+        return null;
+    }
+
+
+
+    /**
+     * Gets the messages with any of the given IDs in one query.
+     * 
+     * @param message_ids   IDs of the messages that we want
+     * 
+     * @return  The messages that exist, in no particular order
+     * 
+     * @throws DataAccessException  if the query failed
+     */
+    public List<Message> getMessagesByIds(Collection<Integer> message_ids) {
+        Connection connection = null;
+        List<Message> messages = new ArrayList<>(message_ids.size());
+        if(message_ids.isEmpty()) {
+            return messages;
+        }
+
+        try {
+            connection = ConnectionPool.getConnection();
+
+            // Make SQL statement and execute it, passing the IDs as one array
+            // so every lookup shares the same cached statement
+            String sql = "SELECT * FROM message WHERE message_id = ANY(?)";
+            PreparedStatement ps = connection.prepareStatement(sql);
+
+            ps.setArray(1, connection.createArrayOf("INTEGER", message_ids.toArray()));
+
             ResultSet rs = ps.executeQuery();
 
 
-            // Store retrieved message and return it
-            if(rs.next()){
+            // Store all retrieved messages in a list
+            while(rs.next()){
                 Message message = new Message(
                     rs.getInt(1),
                     rs.getInt(2),
                     rs.getString(3),
                     rs.getLong(4));
-                return message;
+                messages.add(message);
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
         }
 
-        return null;    // Occurs if retrieval failed
+        return messages;
     }
 
 
@@ -189,33 +595,97 @@ public class MessageDAO {
     /**
      * Updates the text of a message.
      * 
+     * The update and reading back the updated row are one statement (a
+     * FINAL TABLE query over the UPDATE), so they take one round trip and
+     * no other writer can change the message in between.
+     * 
      * @param message_id    ID of the message we want to update
      * @param message       Message object with new text to replace the old
      *                      message text with
      * 
-     * @return  The message that was updated, or "null" if the message wasn't
-     *          updated.
+     * @return  The message that was updated, or "null" if there's no such
+     *          message
+     * @throws DataAccessException  if the update failed
      */
     public Message updateMessageTextById(int message_id, Message message) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
 
         try {
-            // Make SQL statement and execute it
-            String sql = "UPDATE message SET message_text = ? WHERE message_id = ?";
+            connection = ConnectionPool.getConnection();
+
+            // Make SQL statement and execute it, returning the updated row
+            String sql = "SELECT * FROM FINAL TABLE "
+                + "(UPDATE message SET message_text = ?, version = version + 1 WHERE message_id = ?)";
             PreparedStatement ps = connection.prepareStatement(sql);
 
             ps.setString(1, message.getMessage_text());
             ps.setInt(2, message_id);
 
-            ps.executeUpdate();
+            ResultSet rs = ps.executeQuery();
+
+            if(rs.next()) {
+                return new Message(
+                    rs.getInt(1),
+                    rs.getInt(2),
+                    rs.getString(3),
+                    rs.getLong(4));
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
+        }
+
+        return null;
+    }
+
+
+
+    /**
+     * Updates the text of a message only if nobody else has edited it since
+     * the caller read it: a compare-and-set on the "version" column, so
+     * concurrent edits don't silently overwrite each other and no lock is
+     * held between reading and writing.
+     * 
+     * @param message_id    ID of the message we want to update
+     * @param message       Message object with new text to replace the old
+     *                      message text with
+     * @param version       Version of the message the edit was based on;
+     *                      the updated message has version + 1
+     * 
+     * @return  The message that was updated, or "null" if the message
+     *          doesn't exist or has a different version
+     * @throws DataAccessException  if the update failed, so a failure isn't
+     *                              mistaken for a version conflict
+     */
+    public Message updateMessageTextByIdIfVersion(int message_id, Message message, long version) {
+        Connection connection = null;
+
+        try {
+            connection = ConnectionPool.getConnection();
 
-            Message updatedMessage = getMessageById(message_id);
+            // Make SQL statement and execute it, returning the updated row
+            String sql = "SELECT * FROM FINAL TABLE "
+                + "(UPDATE message SET message_text = ?, version = version + 1 WHERE message_id = ? AND version = ?)";
+            PreparedStatement ps = connection.prepareStatement(sql);
 
-            if (ps.getUpdateCount() == 1) {
-                return updatedMessage;
+            ps.setString(1, message.getMessage_text());
+            ps.setInt(2, message_id);
+            ps.setLong(3, version);
+
+            ResultSet rs = ps.executeQuery();
+
+            if(rs.next()) {
+                return new Message(
+                    rs.getInt(1),
+                    rs.getInt(2),
+                    rs.getString(3),
+                    rs.getLong(4));
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
         }
 
         return null;
@@ -227,32 +697,195 @@ public class MessageDAO {
     /**
      * Deletes message with the corresponding ID.
      * 
+     * The delete returns the row it removed (an OLD TABLE query over the
+     * DELETE), so there's no separate read that another writer could race
+     * with.
+     * 
      * @param message_id    ID of the message that we want to delete
      * 
-     * @return  The message that was deleted, or "null" if the message wasn't
-     *          deleted
+     * @return  The message that was deleted, or "null" if there's no such
+     *          message
+     * @throws DataAccessException  if the delete failed
      */
     public Message deleteMessageById(int message_id) {
-        Connection connection = ConnectionUtil.getConnection();
+        Connection connection = null;
 
         try {
-            // Make SQL statement and execute it
-            String sql = "DELETE FROM message WHERE message_id = ?";
+            connection = ConnectionPool.getConnection();
+
+            // Make SQL statement and execute it, returning the deleted row
+            String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?)";
             PreparedStatement ps = connection.prepareStatement(sql);
 
             ps.setInt(1, message_id);
 
-            Message message = getMessageById(message_id);
-
-            ps.executeUpdate();
+            ResultSet rs = ps.executeQuery();
 
-            if (ps.getUpdateCount() == 1) {
-                return message;
+            if(rs.next()) {
+                return new Message(
+                    rs.getInt(1),
+                    rs.getInt(2),
+                    rs.getString(3),
+                    rs.getLong(4));
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionPool.close(connection);
+        }
+
+        return null;    // Occurs if there was no message to delete
+    }
+
+
+
+    // HELPERS //
+    /**
+     * Runs the inserts added to a statement's batch and fills in the created
+     * messages with their generated IDs.
+     * 
+     * @param ps        Insert statement holding the batch
+     * @param messages  All messages being inserted
+     * @param batch     Positions in messages of the ones in the batch, in
+     *                  the order they were added; cleared afterwards
+     * @param created   Receives each created message at its position
+     * 
+     * @throws SQLException if the batch failed
+     */
+    private void executeInsertBatch(PreparedStatement ps, List<Message> messages, List<Integer> batch,
+                                    List<Message> created) throws SQLException {
+        ps.executeBatch();
+
+        // Keys come back in the order the inserts were added
+        ResultSet pkeyResultSet = ps.getGeneratedKeys();
+        for(int index : batch) {
+            if(!pkeyResultSet.next()) {
+                throw new SQLException("Missing generated key for batched insert");
+            }
+
+            Message message = messages.get(index);
+            created.set(index, new Message( (int) pkeyResultSet.getLong(1),
+                                            message.getPosted_by(),
+                                            message.getMessage_text(),
+                                            message.getTime_posted_epoch()
+            ));
+        }
+        batch.clear();
+    }
+
+    /**
+     * @return  IDs of the posters of the messages that exist as accounts
+     * 
+     * @throws SQLException if the query failed
+     */
+    private Set<Integer> selectExistingAccountIds(Connection connection, List<Message> messages)
+            throws SQLException {
+        Set<Integer> requested = new HashSet<>();
+        for(Message message : messages) {
+            requested.add(message.getPosted_by());
         }
 
-        return null;    // Occurs if no message was deleted
+        String sql = "SELECT account_id FROM account WHERE account_id = ANY(?)";
+        PreparedStatement ps = connection.prepareStatement(sql);
+        ps.setArray(1, connection.createArrayOf("INTEGER", requested.toArray()));
+
+        Set<Integer> existing = new HashSet<>();
+        ResultSet rs = ps.executeQuery();
+        while(rs.next()) {
+            existing.add(rs.getInt(1));
+        }
+        return existing;
+    }
+
+    /**
+     * Gets message with the corresponding ID using a connection the caller
+     * already holds.
+     * 
+     * @param connection    Connection to run the query on
+     * @param message_id    ID of the message that we want
+     * 
+     * @return  Singular message with the specified ID, or "null" if there's
+     *          no such message
+     * 
+     * @throws SQLException if the query failed
+     */
+    private Message selectMessageById(Connection connection, int message_id) throws SQLException {
+        // Make SQL statement and execute it
+        String sql = "SELECT * FROM message WHERE message_id = ?";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        ps.setInt(1, message_id);
+
+        ResultSet rs = ps.executeQuery();
+
+
+        // Store retrieved message and return it
+        if(rs.next()){
+            Message message = new Message(
+                rs.getInt(1),
+                rs.getInt(2),
+                rs.getString(3),
+                rs.getLong(4));
+            return message;
+        }
+
+        return null;
+    }
+
+
+
+    /**
+     * Reads a page of messages from a query that asked for one more row than
+     * the page holds. If that extra row exists there is a next page, and it
+     * starts after the last message kept on this page.
+     * 
+     * @param rs        Results of the page query
+     * @param limit     Number of messages on a full page
+     * 
+     * @return  Page of messages
+     * 
+     * @throws SQLException if reading the results failed
+     */
+    private MessagePage readPage(ResultSet rs, int limit) throws SQLException {
+        List<Message> messages = new ArrayList<>();
+        boolean hasNext = false;
+
+        while(rs.next()){
+            if(messages.size() == limit) {
+                hasNext = true;
+                break;
+            }
+            Message message = new Message(
+                rs.getInt(1),
+                rs.getInt(2),
+                rs.getString(3),
+                rs.getLong(4));
+            messages.add(message);
+        }
+
+        MessageCursor nextCursor = hasNext ? MessageCursor.after(messages.get(messages.size() - 1)) : null;
+        return new MessagePage(messages, nextCursor);
+    }
+
+
+
+    /**
+     * Hands every row of a message query to the consumer, in order.
+     * 
+     * @param rs        Results of the message query
+     * @param consumer  Receives each message
+     * 
+     * @throws SQLException if reading the results failed
+     * @throws IOException  if the consumer failed to handle a message
+     */
+    private void streamResults(ResultSet rs, MessageConsumer consumer) throws SQLException, IOException {
+        while(rs.next()){
+            Message message = new Message(
+                rs.getInt(1),
+                rs.getInt(2),
+                rs.getString(3),
+                rs.getLong(4));
+            consumer.accept(message);
+        }
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,68 @@
+package Model;
+
+/**
+ * This is a class that models a position in the change log behind
+ * GET /messages/changes: the feed version a client has seen every change up
+ * to.
+ *
+ * Feed versions start over from 0 whenever the application starts, so the
+ * token also carries the epoch of the version counters it came from. A
+ * token from another epoch can't be compared with current versions. Clients
+ * only ever see the token as an opaque string.
+ */
+public class ChangeToken {
+    private final long epoch;
+    private final long version;
+
+    public ChangeToken(long epoch, long version) {
+        this.epoch = epoch;
+        this.version = version;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return  Opaque, URL-safe token representing this position
+     */
+    public String encode() {
+        return Long.toHexString(epoch) + "." + Long.toHexString(version);
+    }
+
+    /**
+     * Reads a position back from a token made by encode().
+     * 
+     * @param token     Token provided by a client
+     * 
+     * @return  The position the token represents
+     * 
+     * @throws IllegalArgumentException if the token isn't a valid position
+     */
+    public static ChangeToken decode(String token) {
+        int separator = token.indexOf('.');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid change token: " + token);
+        }
+
+        try {
+            return new ChangeToken(
+                Long.parseUnsignedLong(token.substring(0, separator), 16),
+                Long.parseUnsignedLong(token.substring(separator + 1), 16));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid change token: " + token, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeToken{" +
+                "epoch=" + epoch +
+                ", version=" + version +
+                '}';
+    }
+}
@@ -0,0 +1,72 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of one message in a
+ * POST /messages/batch request.
+ */
+public class MessageBatchResult {
+    public enum Status {
+        /** The message was created */
+        CREATED,
+        /** The message was rejected before reaching the database */
+        INVALID,
+        /** The database didn't create the message */
+        FAILED
+    }
+
+    private final int index;
+    private final Status status;
+    private final Message message;
+    private final String error;
+
+    /**
+     * @param index     Position of the message in the request
+     * @param status    What happened to the message
+     * @param message   The created message, or "null" if it wasn't created
+     * @param error     Why the message wasn't created, or "null" if it was
+     */
+    public MessageBatchResult(int index, Status status, Message message, String error) {
+        this.index = index;
+        this.status = status;
+        this.message = message;
+        this.error = error;
+    }
+
+    public static MessageBatchResult created(int index, Message message) {
+        return new MessageBatchResult(index, Status.CREATED, message, null);
+    }
+
+    public static MessageBatchResult invalid(int index, String error) {
+        return new MessageBatchResult(index, Status.INVALID, null, error);
+    }
+
+    public static MessageBatchResult failed(int index, String error) {
+        return new MessageBatchResult(index, Status.FAILED, null, error);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageBatchResult{" +
+                "index=" + index +
+                ", status=" + status +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
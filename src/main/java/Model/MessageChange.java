@@ -0,0 +1,54 @@
+package Model;
+
+/**
+ * This is a class that models one change to a message, as recorded in the
+ * change log behind GET /messages/changes.
+ *
+ * Created and updated messages carry the message as it was right after the
+ * change. Deleted messages carry the message as it was when it was deleted,
+ * so clients know which message (and which account's feed) to remove it
+ * from.
+ */
+public class MessageChange {
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private final long version;
+    private final Type type;
+    private final Message message;
+
+    /**
+     * @param version   Feed version the change was recorded under
+     * @param type      What kind of change it was
+     * @param message   The changed message
+     */
+    public MessageChange(long version, Type type, Message message) {
+        this.version = version;
+        this.type = type;
+        this.message = message;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageChange{" +
+                "version=" + version +
+                ", type=" + type +
+                ", message=" + message +
+                '}';
+    }
+}
@@ -0,0 +1,59 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models a response of GET /messages/changes: the
+ * changes after the client's token, and the token to ask for the changes
+ * after those.
+ *
+ * If the client's token is too old (its changes are no longer in the change
+ * log) or from before a restart, "resync" is set and there are no changes.
+ * The client should then reload the full feed and carry on from the new
+ * token.
+ */
+public class MessageChanges {
+    private final List<MessageChange> changes;
+    private final String token;
+    private final boolean resync;
+    private final boolean truncated;
+
+    /**
+     * @param changes       Changes after the client's token, oldest first
+     * @param token         Token for the next request
+     * @param resync        Whether the client has to reload the full feed
+     * @param truncated     Whether there are more changes after these
+     */
+    public MessageChanges(List<MessageChange> changes, String token, boolean resync, boolean truncated) {
+        this.changes = changes;
+        this.token = token;
+        this.resync = resync;
+        this.truncated = truncated;
+    }
+
+    public List<MessageChange> getChanges() {
+        return changes;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public boolean isResync() {
+        return resync;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageChanges{" +
+                "changes=" + changes +
+                ", token='" + token + '\'' +
+                ", resync=" + resync +
+                ", truncated=" + truncated +
+                '}';
+    }
+}
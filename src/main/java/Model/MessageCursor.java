@@ -0,0 +1,83 @@
+package Model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * This is a class that models a position in a chronological list of
+ * messages, used for keyset ("cursor") pagination.
+ *
+ * A cursor points just after the message with the given time_posted_epoch
+ * and message_id. The message_id breaks ties between messages posted at the
+ * same time, so every message has exactly one position. Clients only ever
+ * see the cursor as an opaque token.
+ */
+public class MessageCursor {
+    private final long time_posted_epoch;
+    private final int message_id;
+
+    public MessageCursor(long time_posted_epoch, int message_id) {
+        this.time_posted_epoch = time_posted_epoch;
+        this.message_id = message_id;
+    }
+
+    /**
+     * Creates a cursor pointing just after a message.
+     * 
+     * @param message   The last message of a page
+     * 
+     * @return  Cursor for the page after that message
+     */
+    public static MessageCursor after(Message message) {
+        return new MessageCursor(message.getTime_posted_epoch(), message.getMessage_id());
+    }
+
+    public long getTime_posted_epoch() {
+        return time_posted_epoch;
+    }
+
+    public int getMessage_id() {
+        return message_id;
+    }
+
+    /**
+     * @return  Opaque, URL-safe token representing this cursor
+     */
+    public String encode() {
+        String raw = time_posted_epoch + ":" + message_id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a cursor back from a token made by encode().
+     * 
+     * @param token     Token provided by a client
+     * 
+     * @return  The cursor the token represents
+     * 
+     * @throws IllegalArgumentException if the token isn't a valid cursor
+     */
+    public static MessageCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+            }
+            return new MessageCursor(
+                Long.parseLong(raw.substring(0, separator)),
+                Integer.parseInt(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            // Also covers bad Base64 and NumberFormatException
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MessageCursor{" +
+                "time_posted_epoch=" + time_posted_epoch +
+                ", message_id=" + message_id +
+                '}';
+    }
+}
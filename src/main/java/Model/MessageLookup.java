@@ -0,0 +1,38 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models the result of looking up many messages by ID
+ * at once: the messages that were found, in the order they were asked for,
+ * and the IDs that don't exist.
+ */
+public class MessageLookup {
+    private final List<Message> messages;
+    private final List<Integer> missing;
+
+    /**
+     * @param messages  Messages found, in the order their IDs were asked for
+     * @param missing   IDs asked for that don't exist
+     */
+    public MessageLookup(List<Message> messages, List<Integer> missing) {
+        this.messages = messages;
+        this.missing = missing;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public List<Integer> getMissing() {
+        return missing;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageLookup{" +
+                "messages=" + messages +
+                ", missing=" + missing +
+                '}';
+    }
+}
@@ -0,0 +1,45 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models one page of a chronological list of messages,
+ * along with the cursor for the page after it.
+ */
+public class MessagePage {
+    private final List<Message> messages;
+    private final MessageCursor nextCursor;
+
+    /**
+     * @param messages      Messages on this page, in chronological order
+     * @param nextCursor    Cursor for the next page, or "null" if this is the
+     *                      last page
+     */
+    public MessagePage(List<Message> messages, MessageCursor nextCursor) {
+        this.messages = messages;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return  Cursor for the next page, or "null" if this is the last page
+     */
+    public MessageCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    @Override
+    public String toString() {
+        return "MessagePage{" +
+                "messages=" + messages +
+                ", nextCursor=" + nextCursor +
+                '}';
+    }
+}
@@ -1,11 +1,17 @@
 package Service;
 
+import java.util.concurrent.CompletableFuture;
+
 import DAO.AccountDAO;
 import Model.Account;
+import Util.DatabaseExecutor;
 
 /**
  * This is a Service class that acts between the endpoints (controller) and the
  * database (DAO) of the "Account" Java class, validating input.
+ * 
+ * Each operation also has an async variant, which runs on the
+ * DatabaseExecutor and returns a CompletableFuture.
  */
 public class AccountService {
     public AccountDAO accountDAO;
@@ -63,4 +69,25 @@ public class AccountService {
     public Account loginAccount(Account account) {
         return this.accountDAO.getAccount(account);
     }
+
+    // ASYNC OPERATIONS //
+    /**
+     * registerAccount(), run on the DatabaseExecutor.
+     * 
+     * @return  Completes with the account or "null" as in registerAccount(),
+     *          or exceptionally if the executor is overloaded
+     */
+    public CompletableFuture<Account> registerAccountAsync(Account account) {
+        return DatabaseExecutor.supply(() -> registerAccount(account));
+    }
+
+    /**
+     * loginAccount(), run on the DatabaseExecutor.
+     * 
+     * @return  Completes with the account or "null" as in loginAccount(), or
+     *          exceptionally if the executor is overloaded
+     */
+    public CompletableFuture<Account> loginAccountAsync(Account account) {
+        return DatabaseExecutor.supply(() -> loginAccount(account));
+    }
 }
@@ -0,0 +1,90 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import Model.Message;
+import Model.MessageChange;
+
+/**
+ * This is an in-memory log of the most recent changes to messages, the
+ * source of GET /messages/changes.
+ *
+ * Every change is numbered with the next feed version, so the log doubles as
+ * the global feed version counter: the current version is the number of the
+ * last change. Changes are kept in a ring buffer of
+ * socialmedia.changes.capacity entries (default 10000). Once a change has
+ * been overwritten, a client that hasn't seen it yet has to resync from the
+ * full feed.
+ *
+ * Appends are numbered and stored under one lock, so a reader never sees a
+ * version whose change isn't in the buffer yet. Reading the current version
+ * doesn't take the lock.
+ */
+public class ChangeLog {
+    private static final int DEFAULT_CAPACITY = Integer.getInteger("socialmedia.changes.capacity", 10_000);
+
+    private final MessageChange[] ring;
+    /** Version of the last change appended */
+    private volatile long version = 0;
+
+    public ChangeLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity  Number of changes to keep
+     */
+    public ChangeLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Change log capacity must be positive: " + capacity);
+        }
+        this.ring = new MessageChange[capacity];
+    }
+
+    /**
+     * Records a change under the next version.
+     *
+     * @param type      What kind of change it was
+     * @param message   The changed message
+     *
+     * @return  The change, numbered with the version it was recorded under
+     */
+    public synchronized MessageChange append(MessageChange.Type type, Message message) {
+        long next = version + 1;
+        MessageChange change = new MessageChange(next, type, message);
+        ring[(int) (next % ring.length)] = change;
+        version = next;
+        return change;
+    }
+
+    /**
+     * @return  Version of the most recent change, or 0 if there's been none
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the changes after a version, oldest first.
+     *
+     * @param since     Version the caller has seen every change up to
+     * @param limit     Most changes to return
+     *
+     * @return  Up to limit changes after the version, or "null" if some of
+     *          them are no longer in the log (or the version is from the
+     *          future)
+     */
+    public synchronized List<MessageChange> since(long since, int limit) {
+        if (since < version - ring.length || since > version) {
+            return null;
+        }
+
+        long until = Math.min(version, since + limit);
+        List<MessageChange> changes = new ArrayList<>((int) (until - since));
+        for (long v = since + 1; v <= until; v++) {
+            changes.add(ring[(int) (v % ring.length)]);
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,46 @@
+package Service;
+
+/**
+ * A point-in-time snapshot of how messages have been edited, exposed as JSON
+ * on GET /metrics/edits.
+ */
+public class EditStats {
+    private final long unconditionalEdits;
+    private final long conditionalEdits;
+    private final long conflicts;
+
+    EditStats(long unconditionalEdits, long conditionalEdits, long conflicts) {
+        this.unconditionalEdits = unconditionalEdits;
+        this.conditionalEdits = conditionalEdits;
+        this.conflicts = conflicts;
+    }
+
+    /** Edits made without "If-Match", which overwrite whatever is there */
+    public long getUnconditionalEdits() {
+        return unconditionalEdits;
+    }
+
+    /** Edits made with "If-Match" */
+    public long getConditionalEdits() {
+        return conditionalEdits;
+    }
+
+    /** Conditional edits rejected because someone else edited the message first */
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    /** Share of conditional edits that conflicted */
+    public double getConflictRate() {
+        return conditionalEdits == 0 ? 0 : (double) conflicts / conditionalEdits;
+    }
+
+    @Override
+    public String toString() {
+        return "EditStats{" +
+                "unconditionalEdits=" + unconditionalEdits +
+                ", conditionalEdits=" + conditionalEdits +
+                ", conflicts=" + conflicts +
+                '}';
+    }
+}
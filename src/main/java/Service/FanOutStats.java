@@ -0,0 +1,79 @@
+package Service;
+
+/**
+ * A point-in-time snapshot of the cost of keeping home timelines, exposed
+ * as JSON on GET /metrics/timelines.
+ */
+public class FanOutStats {
+    private final int fanOutThreshold;
+    private final long fanOutChanges;
+    private final long fanOutTimelineWrites;
+    private final long fanOutNanos;
+    private final long fanOutSkipped;
+    private final long timelineReads;
+    private final long readMergeSources;
+    private final long readNanos;
+
+    FanOutStats(int fanOutThreshold, long fanOutChanges, long fanOutTimelineWrites, long fanOutNanos,
+                long fanOutSkipped, long timelineReads, long readMergeSources, long readNanos) {
+        this.fanOutThreshold = fanOutThreshold;
+        this.fanOutChanges = fanOutChanges;
+        this.fanOutTimelineWrites = fanOutTimelineWrites;
+        this.fanOutNanos = fanOutNanos;
+        this.fanOutSkipped = fanOutSkipped;
+        this.timelineReads = timelineReads;
+        this.readMergeSources = readMergeSources;
+        this.readNanos = readNanos;
+    }
+
+    /** Followers at which an account's messages are merged on read */
+    public int getFanOutThreshold() {
+        return fanOutThreshold;
+    }
+
+    /** Changes fanned out to followers' home timelines on write */
+    public long getFanOutChanges() {
+        return fanOutChanges;
+    }
+
+    /** Cached home timelines patched by those changes */
+    public long getFanOutTimelineWrites() {
+        return fanOutTimelineWrites;
+    }
+
+    public double getAverageFanOutMillis() {
+        return fanOutChanges == 0 ? 0 : fanOutNanos / 1_000_000.0 / fanOutChanges;
+    }
+
+    /** Changes by accounts over the threshold, left to be merged on read */
+    public long getFanOutSkipped() {
+        return fanOutSkipped;
+    }
+
+    public long getTimelineReads() {
+        return timelineReads;
+    }
+
+    /** Timelines of accounts over the threshold merged in on read */
+    public long getReadMergeSources() {
+        return readMergeSources;
+    }
+
+    public double getAverageReadMillis() {
+        return timelineReads == 0 ? 0 : readNanos / 1_000_000.0 / timelineReads;
+    }
+
+    @Override
+    public String toString() {
+        return "FanOutStats{" +
+                "fanOutThreshold=" + fanOutThreshold +
+                ", fanOutChanges=" + fanOutChanges +
+                ", fanOutTimelineWrites=" + fanOutTimelineWrites +
+                ", fanOutNanos=" + fanOutNanos +
+                ", fanOutSkipped=" + fanOutSkipped +
+                ", timelineReads=" + timelineReads +
+                ", readMergeSources=" + readMergeSources +
+                ", readNanos=" + readNanos +
+                '}';
+    }
+}
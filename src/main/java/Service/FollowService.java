@@ -0,0 +1,409 @@
+package Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import DAO.DataAccessException;
+import DAO.FollowDAO;
+import Model.Message;
+import Model.MessageChange;
+import Util.CacheMetrics;
+import Util.DatabaseExecutor;
+
+/**
+ * This is a Service class for the follow graph and the home timelines built
+ * from it: the most recent messages of every account an account follows,
+ * newest first.
+ *
+ * Home timelines use hybrid fan-out. Messages by ordinary accounts are
+ * fanned out on write: when one is created or deleted, the cached home
+ * timeline of each of the poster's followers is patched right away, and
+ * when one is edited, the timelines holding it are dropped, so reading a
+ * home timeline is mostly a cache hit. Accounts with at least
+ * socialmedia.timeline.fanOutThreshold followers (default 1000) would make
+ * every post patch that many timelines, so their messages are left out of
+ * cached home timelines and merged in on read instead, from the poster's own
+ * (cached) timeline.
+ *
+ * Cached home timelines keep the socialmedia.cache.home.maxMessages most
+ * recent messages (default 500) for up to socialmedia.cache.home.maxSize
+ * accounts (default 10000), and expire after socialmedia.cache.home.ttlSeconds
+ * (default 600). Follower and followee lists are cached the same way, and
+ * following or unfollowing someone invalidates what it affects. Loads that
+ * fail in the database throw a DataAccessException and aren't cached.
+ *
+ * Following and unfollowing also have async variants, which run on the
+ * DatabaseExecutor and return a CompletableFuture.
+ */
+public class FollowService {
+    /** Longest home timeline a client may ask for */
+    public static final int MAX_TIMELINE_SIZE = 200;
+
+    private static final int FAN_OUT_THRESHOLD = Integer.getInteger("socialmedia.timeline.fanOutThreshold", 1000);
+
+    private static final int HOME_MESSAGES = Integer.getInteger("socialmedia.cache.home.maxMessages", 500);
+    private static final long HOME_CACHE_SIZE = Long.getLong("socialmedia.cache.home.maxSize", 10_000);
+    private static final long HOME_CACHE_TTL_SECONDS = Long.getLong("socialmedia.cache.home.ttlSeconds", 600);
+
+    /** Newest first, with message_id breaking ties */
+    private static final Comparator<Message> NEWEST_FIRST = TimelineCache.CHRONOLOGICAL.reversed();
+
+    public FollowDAO followDAO;
+    private final MessageService messageService;
+
+    /** Home timelines of ordinary followees' messages by account_id, newest first */
+    private final Cache<Integer, List<Message>> homeTimelines = Caffeine.newBuilder()
+        .maximumSize(HOME_CACHE_SIZE)
+        .expireAfterWrite(Duration.ofSeconds(HOME_CACHE_TTL_SECONDS))
+        .recordStats()
+        .build();
+
+    /** Follower counts by account_id */
+    private final Cache<Integer, Integer> followerCounts = Caffeine.newBuilder()
+        .maximumSize(HOME_CACHE_SIZE)
+        .expireAfterWrite(Duration.ofSeconds(HOME_CACHE_TTL_SECONDS))
+        .build();
+
+    /** Followers of ordinary accounts by account_id */
+    private final Cache<Integer, List<Integer>> followers = Caffeine.newBuilder()
+        .maximumSize(HOME_CACHE_SIZE)
+        .expireAfterWrite(Duration.ofSeconds(HOME_CACHE_TTL_SECONDS))
+        .build();
+
+    /** Followees by account_id */
+    private final Cache<Integer, List<Integer>> followees = Caffeine.newBuilder()
+        .maximumSize(HOME_CACHE_SIZE)
+        .expireAfterWrite(Duration.ofSeconds(HOME_CACHE_TTL_SECONDS))
+        .build();
+
+    private final LongAdder fanOutChanges = new LongAdder();
+    private final LongAdder fanOutTimelineWrites = new LongAdder();
+    private final LongAdder fanOutNanos = new LongAdder();
+    private final LongAdder fanOutSkipped = new LongAdder();
+    private final LongAdder timelineReads = new LongAdder();
+    private final LongAdder readMergeSources = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+
+    // CONSTRUCTORS //
+    /**
+     * Constructor for a FollowService which creates a FollowDAO and keeps
+     * home timelines up to date with the changes made through a
+     * MessageService.
+     *
+     * @param messageService    Service messages are read from and changed
+     *                          through
+     */
+    public FollowService(MessageService messageService) {
+        this(new FollowDAO(), messageService);
+    }
+
+    /**
+     * Constructor for a FollowService when a FollowDAO is provided.
+     * Used for mocking FollowDAO in the test cases.
+     *
+     * @param followDAO
+     * @param messageService
+     */
+    public FollowService(FollowDAO followDAO, MessageService messageService) {
+        this.followDAO = followDAO;
+        this.messageService = messageService;
+        messageService.addChangeListener(this::fanOut);
+    }
+
+    // CREATE OPERATIONS //
+    /**
+     * Makes one account follow another.
+     *
+     * @param follower_id   ID of the account following
+     * @param followee_id   ID of the account to follow
+     *
+     * @return  Whether the account follows the other now, "false" if it
+     *          tried to follow itself or either account doesn't exist
+     */
+    public boolean follow(int follower_id, int followee_id) {
+        if(follower_id == followee_id) {
+            return false;
+        }
+
+        boolean followed = followDAO.insertFollow(follower_id, followee_id);
+        if(followed) {
+            followGraphChanged(follower_id, followee_id);
+        }
+        return followed;
+    }
+
+    // READ OPERATIONS //
+    /**
+     * @param follower_id   ID of the account following
+     *
+     * @return  IDs of the accounts it follows
+     */
+    public List<Integer> getFollowees(int follower_id) {
+        return followees.get(follower_id, followDAO::getFolloweeIds);
+    }
+
+    /**
+     * Gets an account's home timeline: the most recent messages of the
+     * accounts it follows, newest first.
+     *
+     * The cached timeline of ordinary followees' messages is k-way merged
+     * with the recent messages of each followee over the fan-out threshold.
+     *
+     * @param account_id    ID of the account whose timeline we want
+     * @param limit         Maximum number of messages, clamped to
+     *                      MAX_TIMELINE_SIZE
+     *
+     * @return  Up to limit messages, newest first
+     */
+    public List<Message> getHomeTimeline(int account_id, int limit) {
+        limit = Math.max(1, Math.min(limit, MAX_TIMELINE_SIZE));
+        long start = System.nanoTime();
+
+        List<List<Message>> sources = new ArrayList<>();
+        sources.add(homeTimelines.get(account_id, this::loadHomeTimeline));
+        for(int followee_id : getFollowees(account_id)) {
+            if(isFanOutOnRead(followee_id)) {
+                sources.add(messageService.getRecentMessagesByAccount(followee_id, limit));
+            }
+        }
+        List<Message> timeline = merge(sources, limit);
+
+        timelineReads.increment();
+        readMergeSources.add(sources.size() - 1);
+        readNanos.add(System.nanoTime() - start);
+        return timeline;
+    }
+
+    // DELETE OPERATIONS //
+    /**
+     * Makes one account stop following another.
+     *
+     * @param follower_id   ID of the account following
+     * @param followee_id   ID of the account to unfollow
+     *
+     * @return  Whether it was following the other account
+     */
+    public boolean unfollow(int follower_id, int followee_id) {
+        boolean unfollowed = followDAO.deleteFollow(follower_id, followee_id);
+        if(unfollowed) {
+            followGraphChanged(follower_id, followee_id);
+
+            // An account that drops back under the threshold gets fanned
+            // out on write again, so timelines built without its messages
+            // have to be rebuilt
+            try {
+                if(getFollowerCount(followee_id) == FAN_OUT_THRESHOLD - 1) {
+                    homeTimelines.invalidateAll(getFollowers(followee_id));
+                }
+            } catch (DataAccessException e) {
+                // The unfollow is done; rebuild every timeline rather than
+                // fail it over which ones it affects
+                homeTimelines.invalidateAll();
+            }
+        }
+        return unfollowed;
+    }
+
+    // ASYNC OPERATIONS //
+    /**
+     * follow(), run on the DatabaseExecutor.
+     *
+     * @return  Completes with whether the account follows the other now, as
+     *          in follow(), or exceptionally if the executor is overloaded
+     */
+    public CompletableFuture<Boolean> followAsync(int follower_id, int followee_id) {
+        return DatabaseExecutor.supply(() -> follow(follower_id, followee_id));
+    }
+
+    /**
+     * unfollow(), run on the DatabaseExecutor.
+     *
+     * @return  Completes with whether it was following the other account, as
+     *          in unfollow(), or exceptionally if the executor is overloaded
+     */
+    public CompletableFuture<Boolean> unfollowAsync(int follower_id, int followee_id) {
+        return DatabaseExecutor.supply(() -> unfollow(follower_id, followee_id));
+    }
+
+    // METRICS //
+    /**
+     * @return  Cost of fanning changes out on write and merging timelines on
+     *          read
+     */
+    public FanOutStats getFanOutStats() {
+        return new FanOutStats(FAN_OUT_THRESHOLD, fanOutChanges.sum(), fanOutTimelineWrites.sum(),
+            fanOutNanos.sum(), fanOutSkipped.sum(), timelineReads.sum(), readMergeSources.sum(), readNanos.sum());
+    }
+
+    /**
+     * @return  Hit, miss and eviction counts of the home timeline cache
+     */
+    public CacheMetrics getCacheMetrics() {
+        return CacheMetrics.of("home-timelines", homeTimelines);
+    }
+
+    // HELPERS //
+    /**
+     * Patches the cached home timelines of the poster's followers with a
+     * change. New messages by a poster with too many followers to fan out
+     * to are skipped, but edits and deletes are fanned out whatever the
+     * poster's follower count: copies pushed while it was still under the
+     * threshold may be cached.
+     *
+     * Runs after the change was written, so failing to read the follow
+     * graph doesn't fail the write: every cached home timeline is dropped
+     * instead, since there's no telling which ones the change affects.
+     */
+    private void fanOut(MessageChange change) {
+        int poster = change.getMessage().getPosted_by();
+        List<Integer> posterFollowers;
+        try {
+            if(!isFanOutOnRead(poster)) {
+                posterFollowers = getFollowers(poster);
+            } else if(change.getType() == MessageChange.Type.CREATED) {
+                fanOutSkipped.increment();
+                return;
+            } else {
+                // Not cached, the list is too long to keep around
+                posterFollowers = followDAO.getFollowerIds(poster);
+            }
+        } catch (DataAccessException e) {
+            homeTimelines.invalidateAll();
+            return;
+        }
+
+        long start = System.nanoTime();
+        long[] writes = { 0 };
+        for(int follower_id : posterFollowers) {
+            homeTimelines.asMap().computeIfPresent(follower_id, (id, timeline) -> {
+                List<Message> updated = apply(timeline, change);
+                if(updated != timeline) {
+                    writes[0]++;
+                }
+                return updated;
+            });
+        }
+
+        fanOutChanges.increment();
+        fanOutTimelineWrites.add(writes[0]);
+        fanOutNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Applies a change to a home timeline. An edit drops a timeline holding
+     * the message instead of writing the new text in: fan-out runs on the
+     * writer's thread, so two edits could land out of order, and the
+     * rebuilt timeline reads the text back through the MessageService.
+     *
+     * @return  A copy of a home timeline with a change applied, the same
+     *          timeline if it doesn't change, or "null" if the timeline
+     *          should be dropped
+     */
+    private static List<Message> apply(List<Message> timeline, MessageChange change) {
+        Message message = change.getMessage();
+        int index = Collections.binarySearch(timeline, message, NEWEST_FIRST);
+
+        List<Message> updated = new ArrayList<>(timeline);
+        switch(change.getType()) {
+            case CREATED:
+                if(index >= 0) {
+                    return timeline;
+                }
+                updated.add(-index - 1, message);
+                if(updated.size() > HOME_MESSAGES) {
+                    updated.remove(updated.size() - 1);
+                }
+                break;
+            case UPDATED:
+                if(index < 0) {
+                    return timeline;
+                }
+                return null;
+            case DELETED:
+                if(index < 0) {
+                    return timeline;
+                }
+                updated.remove(index);
+                break;
+        }
+        return Collections.unmodifiableList(updated);
+    }
+
+    /**
+     * Builds a home timeline from the recent messages of every ordinary
+     * followee.
+     */
+    private List<Message> loadHomeTimeline(int account_id) {
+        List<List<Message>> sources = new ArrayList<>();
+        for(int followee_id : getFollowees(account_id)) {
+            if(!isFanOutOnRead(followee_id)) {
+                sources.add(messageService.getRecentMessagesByAccount(followee_id, HOME_MESSAGES));
+            }
+        }
+        return Collections.unmodifiableList(merge(sources, HOME_MESSAGES));
+    }
+
+    /**
+     * K-way merges lists of messages, each newest first, into one list of
+     * the newest messages, dropping duplicates.
+     */
+    private static List<Message> merge(List<List<Message>> sources, int limit) {
+        // Each entry is a source and the position of its next message
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, sources.size()),
+            (a, b) -> NEWEST_FIRST.compare(sources.get(a[0]).get(a[1]), sources.get(b[0]).get(b[1])));
+        for(int i = 0; i < sources.size(); i++) {
+            if(!sources.get(i).isEmpty()) {
+                heads.add(new int[] { i, 0 });
+            }
+        }
+
+        List<Message> merged = new ArrayList<>(limit);
+        Set<Integer> seen = new HashSet<>();
+        while(!heads.isEmpty() && merged.size() < limit) {
+            int[] head = heads.poll();
+            List<Message> source = sources.get(head[0]);
+
+            Message message = source.get(head[1]);
+            if(seen.add(message.getMessage_id())) {
+                merged.add(message);
+            }
+            if(++head[1] < source.size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return  Whether an account has too many followers to fan out to
+     */
+    private boolean isFanOutOnRead(int account_id) {
+        return getFollowerCount(account_id) >= FAN_OUT_THRESHOLD;
+    }
+
+    private int getFollowerCount(int account_id) {
+        return followerCounts.get(account_id, followDAO::countFollowers);
+    }
+
+    private List<Integer> getFollowers(int account_id) {
+        return followers.get(account_id, followDAO::getFollowerIds);
+    }
+
+    private void followGraphChanged(int follower_id, int followee_id) {
+        followees.invalidate(follower_id);
+        followers.invalidate(followee_id);
+        followerCounts.invalidate(followee_id);
+        homeTimelines.invalidate(follower_id);
+    }
+}
@@ -0,0 +1,90 @@
+package Service;
+
+/**
+ * A point-in-time snapshot of the GroupCommitWriter, exposed as JSON on
+ * GET /metrics/writes.
+ */
+public class GroupCommitStats {
+    /** Stats of a MessageService that inserts each message on its own */
+    static final GroupCommitStats DISABLED = new GroupCommitStats(false, 0, 0, 0, 0, 0, 0, 0);
+
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long maxLatencyMillis;
+    private final int queued;
+    private final long groups;
+    private final long messages;
+    private final long failedGroups;
+    private final long waitNanos;
+
+    GroupCommitStats(boolean enabled, int maxBatchSize, long maxLatencyMillis, int queued, long groups,
+            long messages, long failedGroups, long waitNanos) {
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.queued = queued;
+        this.groups = groups;
+        this.messages = messages;
+        this.failedGroups = failedGroups;
+        this.waitNanos = waitNanos;
+    }
+
+    /** Whether new messages are committed in groups */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Most messages committed together */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /** Longest a message waits for others to join its group */
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    /** Messages waiting for the writer */
+    public int getQueued() {
+        return queued;
+    }
+
+    /** Groups committed */
+    public long getGroups() {
+        return groups;
+    }
+
+    /** Messages in committed groups */
+    public long getMessages() {
+        return messages;
+    }
+
+    /** Groups that failed with an unexpected error */
+    public long getFailedGroups() {
+        return failedGroups;
+    }
+
+    /** Average messages per committed group */
+    public double getAverageGroupSize() {
+        return groups == 0 ? 0 : (double) messages / groups;
+    }
+
+    /** Average time a message waited in the queue, in microseconds */
+    public double getAverageWaitMicros() {
+        return messages == 0 ? 0 : waitNanos / 1000.0 / messages;
+    }
+
+    @Override
+    public String toString() {
+        return "GroupCommitStats{" +
+                "enabled=" + enabled +
+                ", maxBatchSize=" + maxBatchSize +
+                ", maxLatencyMillis=" + maxLatencyMillis +
+                ", queued=" + queued +
+                ", groups=" + groups +
+                ", messages=" + messages +
+                ", failedGroups=" + failedGroups +
+                ", waitNanos=" + waitNanos +
+                '}';
+    }
+}
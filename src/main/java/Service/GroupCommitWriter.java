@@ -0,0 +1,212 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import DAO.MessageDAO;
+import Model.Message;
+
+/**
+ * The GroupCommitWriter inserts new messages through one writer thread that
+ * commits them in groups, instead of each insert being its own transaction.
+ *
+ * Every commit makes H2 sync its file, so with one transaction per message
+ * the commit rate caps how fast messages can be posted. Here callers queue
+ * their message and wait on a future; the writer takes the oldest queued
+ * message, keeps collecting until it has socialmedia.groupCommit.maxBatchSize
+ * messages (default 64) or that message has waited
+ * socialmedia.groupCommit.maxLatencyMillis (default 2), and inserts them all
+ * with MessageDAO.insertMessages() in one transaction. Each caller's future
+ * then completes with its own message, carrying the generated message_id.
+ *
+ * Messages are grouped together, so a database error fails the whole group,
+ * while a message whose poster doesn't exist only fails on its own. The
+ * writer thread exits when the queue stays empty and comes back with the
+ * next message.
+ */
+public class GroupCommitWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+    static final int MAX_BATCH_SIZE = Integer.getInteger("socialmedia.groupCommit.maxBatchSize", 64);
+    static final long MAX_LATENCY_MILLIS = Long.getLong("socialmedia.groupCommit.maxLatencyMillis", 2);
+
+    private final MessageDAO messageDAO;
+    private final int maxBatchSize;
+    private final long maxLatencyNanos;
+
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    /** Runs the writer; at most one thread, which exits when idle */
+    private final ThreadPoolExecutor writer;
+    /** Whether the writer is scheduled or running */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder failedGroups = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * Constructor for a GroupCommitWriter with the configured group size and
+     * latency.
+     *
+     * @param messageDAO    DAO the groups are inserted through
+     */
+    public GroupCommitWriter(MessageDAO messageDAO) {
+        this(messageDAO, MAX_BATCH_SIZE, MAX_LATENCY_MILLIS);
+    }
+
+    /**
+     * @param messageDAO        DAO the groups are inserted through
+     * @param maxBatchSize      Most messages committed together
+     * @param maxLatencyMillis  Longest a message waits for others to join
+     *                          its group
+     */
+    public GroupCommitWriter(MessageDAO messageDAO, int maxBatchSize, long maxLatencyMillis) {
+        this.messageDAO = messageDAO;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxLatencyMillis));
+        this.writer = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "message-group-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writer.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a message to be inserted with the next group.
+     *
+     * @param message   The new message, already validated
+     *
+     * @return  Completes with the created message, or "null" if its poster
+     *          doesn't exist or the insert failed
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        Pending pending = new Pending(message);
+        queue.add(pending);
+        schedule();
+        return pending.future;
+    }
+
+    /**
+     * Queues a message and waits for its group to be committed.
+     *
+     * @param message   The new message, already validated
+     *
+     * @return  The created message, or "null" if its poster doesn't exist or
+     *          the insert failed
+     */
+    public Message insert(Message message) {
+        return submit(message).join();
+    }
+
+    /**
+     * @return  Group and message counts since this writer was created
+     */
+    public GroupCommitStats getStats() {
+        return new GroupCommitStats(true, maxBatchSize, TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos),
+            queue.size(), groups.sum(), messages.sum(), failedGroups.sum(), waitNanos.sum());
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            writer.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            List<Pending> group;
+            while (!(group = collect()).isEmpty()) {
+                commit(group);
+            }
+        } finally {
+            scheduled.set(false);
+            // A message queued after the last poll would otherwise wait for
+            // the next one
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * @return  The next group: the oldest queued message and whatever joins
+     *          it before the group is full or the message has waited long
+     *          enough
+     */
+    private List<Pending> collect() {
+        List<Pending> group = new ArrayList<>();
+        Pending first = queue.poll();
+        if (first == null) {
+            return group;
+        }
+        group.add(first);
+
+        long deadline = first.queuedAt + maxLatencyNanos;
+        try {
+            while (group.size() < maxBatchSize) {
+                long wait = deadline - System.nanoTime();
+                Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                if (next == null) {
+                    break;
+                }
+                group.add(next);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return group;
+    }
+
+    private void commit(List<Pending> group) {
+        List<Message> newMessages = new ArrayList<>(group.size());
+        long now = System.nanoTime();
+        long waited = 0;
+        for (Pending pending : group) {
+            newMessages.add(pending.message);
+            waited += now - pending.queuedAt;
+        }
+
+        List<Message> addedMessages;
+        try {
+            addedMessages = messageDAO.insertMessages(newMessages);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not insert a group of " + group.size() + " messages", e);
+            failedGroups.increment();
+            for (Pending pending : group) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        groups.increment();
+        messages.add(group.size());
+        waitNanos.add(waited);
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).future.complete(addedMessages.get(i));
+        }
+    }
+
+    /**
+     * A queued message and the future its caller waits on.
+     */
+    private static final class Pending {
+        final Message message;
+        final long queuedAt = System.nanoTime();
+        final CompletableFuture<Message> future = new CompletableFuture<>();
+
+        Pending(Message message) {
+            this.message = message;
+        }
+    }
+}
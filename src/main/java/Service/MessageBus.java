@@ -0,0 +1,327 @@
+package Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import Model.MessageChange;
+import Util.JsonUtil;
+
+/**
+ * The MessageBus fans changes to messages out to live subscribers, such as
+ * the Server-Sent Events streams of GET /messages/live and
+ * GET /accounts/{account_id}/messages/live.
+ *
+ * Publishing never blocks. Each change is encoded to JSON once and offered
+ * to a bounded queue per subscriber (socialmedia.live.queueSize, default
+ * 256), and a small shared pool of delivery threads
+ * (socialmedia.live.deliveryThreads, default 4) drains the queues into the
+ * subscribers. A subscriber that falls so far behind that its queue fills up
+ * is dropped and its stream closed, rather than holding back the writers or
+ * the other subscribers. Closing the stream also fails a write stuck on the
+ * stalled client, so it gives its delivery thread back right away. Clients
+ * that get dropped can catch up through GET /messages/changes, using the ID
+ * of the last event they saw.
+ *
+ * Idle subscribers get a heartbeat every socialmedia.live.heartbeatSeconds
+ * (default 15), which keeps proxies from timing the stream out and lets us
+ * notice clients that went away.
+ *
+ * Changes made at the same time by different writers may reach subscribers
+ * out of order; their IDs (change tokens) give the order they happened in.
+ */
+public class MessageBus {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageBus.class);
+
+    private static final int QUEUE_SIZE = Integer.getInteger("socialmedia.live.queueSize", 256);
+    private static final int DELIVERY_THREADS = Integer.getInteger("socialmedia.live.deliveryThreads", 4);
+    private static final long HEARTBEAT_SECONDS = Long.getLong("socialmedia.live.heartbeatSeconds", 15);
+
+    /** Drains subscriber queues; threads exit when there's nothing to deliver */
+    private static final ThreadPoolExecutor delivery = createDeliveryPool();
+
+    private static final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "message-bus-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Where a subscriber's events are written, such as an SSE stream. Only
+     * one delivery thread calls send() and heartbeat() at a time.
+     */
+    public interface Sink {
+        /**
+         * @param id        Change token of the change
+         * @param event     Kind of change: "created", "updated" or "deleted"
+         * @param json      The change as JSON
+         */
+        void send(String id, String event, String json) throws Exception;
+
+        void heartbeat() throws Exception;
+
+        /**
+         * Closes the sink after the subscriber was dropped. Called from the
+         * publishing thread, possibly while send() or heartbeat() is blocked
+         * on a delivery thread; it must make them fail or return instead of
+         * waiting on the client.
+         */
+        void close();
+    }
+
+    /**
+     * A live subscription, cancelled when its client goes away.
+     */
+    public interface Subscription {
+        void cancel();
+    }
+
+    /** Subscribers to every change */
+    private final Set<Subscriber> globalSubscribers = ConcurrentHashMap.newKeySet();
+    /** Subscribers to one account's changes, by account_id */
+    private final Map<Integer, Set<Subscriber>> accountSubscribers = new ConcurrentHashMap<>();
+
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    /** Sends heartbeats while there are subscribers; guarded by this */
+    private ScheduledFuture<?> heartbeatTask;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder slowConsumersDropped = new LongAdder();
+
+    /**
+     * Subscribes to changes to messages.
+     *
+     * @param account_id    ID of the account to follow, or "null" for every
+     *                      change
+     * @param sink          Where to write the changes
+     *
+     * @return  The subscription, to cancel when the client goes away
+     */
+    public Subscription subscribe(Integer account_id, Sink sink) {
+        Subscriber subscriber = new Subscriber(account_id, sink);
+        if (account_id == null) {
+            globalSubscribers.add(subscriber);
+        } else {
+            accountSubscribers.compute(account_id, (id, subscribers) -> {
+                Set<Subscriber> updated = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+                updated.add(subscriber);
+                return updated;
+            });
+        }
+
+        if (subscriberCount.incrementAndGet() == 1) {
+            startHeartbeats();
+        }
+        return subscriber;
+    }
+
+    /**
+     * Offers a change to everyone subscribed to it. Never blocks.
+     *
+     * @param change    The change
+     * @param id        Change token of the change, sent as the event ID
+     */
+    public void publish(MessageChange change, String id) {
+        Set<Subscriber> account = accountSubscribers.get(change.getMessage().getPosted_by());
+        if (globalSubscribers.isEmpty() && (account == null || account.isEmpty())) {
+            return;
+        }
+
+        String json;
+        try {
+            json = JsonUtil.MESSAGE_CHANGE_WRITER.writeValueAsString(change);
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Could not encode " + change, e);
+            return;
+        }
+        published.increment();
+
+        Event event = new Event(id, change.getType().name().toLowerCase(), json);
+        for (Subscriber subscriber : globalSubscribers) {
+            subscriber.offer(event);
+        }
+        if (account != null) {
+            for (Subscriber subscriber : account) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    /**
+     * @return  Subscriber, delivery and drop counts
+     */
+    public MessageBusStats getStats() {
+        return new MessageBusStats(subscriberCount.get(), published.sum(), delivered.sum(),
+            slowConsumersDropped.sum());
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (subscriber.account_id == null) {
+            globalSubscribers.remove(subscriber);
+        } else {
+            // Drop the account's set along with its last subscriber
+            accountSubscribers.computeIfPresent(subscriber.account_id, (id, subscribers) -> {
+                subscribers.remove(subscriber);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+
+        if (subscriberCount.decrementAndGet() == 0) {
+            stopHeartbeats();
+        }
+    }
+
+    private synchronized void startHeartbeats() {
+        if (heartbeatTask == null) {
+            heartbeatTask = heartbeats.scheduleAtFixedRate(this::heartbeat,
+                HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private synchronized void stopHeartbeats() {
+        if (heartbeatTask != null && subscriberCount.get() == 0) {
+            heartbeatTask.cancel(false);
+            heartbeatTask = null;
+        }
+    }
+
+    private void heartbeat() {
+        for (Subscriber subscriber : globalSubscribers) {
+            subscriber.requestHeartbeat();
+        }
+        for (Set<Subscriber> subscribers : accountSubscribers.values()) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.requestHeartbeat();
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor createDeliveryPool() {
+        AtomicInteger threads = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(DELIVERY_THREADS, DELIVERY_THREADS,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "message-bus-delivery-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * One change, encoded once and shared by every subscriber it goes to.
+     */
+    private static final class Event {
+        final String id;
+        final String type;
+        final String json;
+
+        Event(String id, String type, String json) {
+            this.id = id;
+            this.type = type;
+            this.json = json;
+        }
+    }
+
+    /**
+     * A subscriber's queue of undelivered events. At most one delivery task
+     * per subscriber is scheduled at a time, so its sink is only ever written
+     * by one thread.
+     */
+    private final class Subscriber implements Subscription {
+        final Integer account_id;
+        final Sink sink;
+        final ArrayBlockingQueue<Event> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        /** Whether a delivery task is scheduled or running */
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final AtomicBoolean sinkClosed = new AtomicBoolean();
+
+        volatile boolean heartbeatDue = false;
+
+        Subscriber(Integer account_id, Sink sink) {
+            this.account_id = account_id;
+            this.sink = sink;
+        }
+
+        void offer(Event event) {
+            if (cancelled.get()) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                // Too slow to keep up, drop it rather than wait for it.
+                // Closing the sink here rather than after delivery stops
+                // fails a write stalled on the client, which would
+                // otherwise hold a shared delivery thread until it times out
+                slowConsumersDropped.increment();
+                LOGGER.info("Dropping live subscriber that fell " + QUEUE_SIZE + " events behind");
+                cancel();
+                if (sinkClosed.compareAndSet(false, true)) {
+                    queue.clear();
+                    sink.close();
+                }
+                return;
+            }
+            schedule();
+        }
+
+        void requestHeartbeat() {
+            heartbeatDue = true;
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                remove(this);
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                delivery.execute(this::deliver);
+            }
+        }
+
+        private void deliver() {
+            try {
+                Event event;
+                while (!cancelled.get() && (event = queue.poll()) != null) {
+                    sink.send(event.id, event.type, event.json);
+                    delivered.increment();
+                }
+                if (!cancelled.get() && heartbeatDue) {
+                    heartbeatDue = false;
+                    sink.heartbeat();
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Live subscriber went away", e);
+                cancel();
+            } finally {
+                scheduled.set(false);
+            }
+
+            // Pick up anything offered after the queue was drained, but
+            // before the task was marked as finished
+            if (!cancelled.get() && (!queue.isEmpty() || heartbeatDue)) {
+                schedule();
+            }
+        }
+    }
+}
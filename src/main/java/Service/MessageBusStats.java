@@ -0,0 +1,49 @@
+package Service;
+
+/**
+ * A point-in-time snapshot of the MessageBus, exposed as JSON on
+ * GET /metrics/live.
+ */
+public class MessageBusStats {
+    private final int subscribers;
+    private final long published;
+    private final long delivered;
+    private final long slowConsumersDropped;
+
+    MessageBusStats(int subscribers, long published, long delivered, long slowConsumersDropped) {
+        this.subscribers = subscribers;
+        this.published = published;
+        this.delivered = delivered;
+        this.slowConsumersDropped = slowConsumersDropped;
+    }
+
+    /** Live streams currently subscribed */
+    public int getSubscribers() {
+        return subscribers;
+    }
+
+    /** Changes published while someone was subscribed to them */
+    public long getPublished() {
+        return published;
+    }
+
+    /** Events written to subscribers, counting each subscriber separately */
+    public long getDelivered() {
+        return delivered;
+    }
+
+    /** Subscribers dropped for falling too far behind */
+    public long getSlowConsumersDropped() {
+        return slowConsumersDropped;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageBusStats{" +
+                "subscribers=" + subscribers +
+                ", published=" + published +
+                ", delivered=" + delivered +
+                ", slowConsumersDropped=" + slowConsumersDropped +
+                '}';
+    }
+}
@@ -1,23 +1,167 @@
 package Service;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import DAO.DataAccessException;
+import DAO.MessageConsumer;
 import DAO.MessageDAO;
+import Model.ChangeToken;
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessageChange;
+import Model.MessageChanges;
+import Model.MessageCursor;
+import Model.MessageLookup;
+import Model.MessagePage;
+import Util.CacheMetrics;
+import Util.DatabaseExecutor;
 
 /**
  * This is a Service class that acts between the endpoints (controller) and the
  * database (DAO) of the "Message" Java class, validating input.
+ * 
+ * Messages looked up by ID are cached in memory. The cache is bounded in size
+ * (socialmedia.cache.messages.maxSize, default 10000), entries expire after
+ * socialmedia.cache.messages.ttlSeconds (default 300), and Caffeine's
+ * W-TinyLFU admission keeps frequently read messages in the cache over
+ * messages read once. Creating, updating and deleting a message through this
+ * service keeps the cache up to date.
+ * 
+ * IDs that turned out not to exist are remembered too (up to
+ * socialmedia.cache.missing.maxSize, default 100000, for
+ * socialmedia.cache.missing.ttlSeconds, default 30), so repeated lookups of
+ * missing messages are answered without a query. Creating a message clears
+ * its ID from this negative cache, and a read that may have raced a create
+ * of the ID doesn't add it. Deletes always go to the database.
+ * 
+ * Each account's timeline is cached as well, see TimelineCache.
+ * 
+ * Identical reads that miss the caches at the same time (a message by ID,
+ * an account's uncached feed, the full feed and pages of either) share one
+ * query through a SingleFlight, keyed by the version of what they read so a
+ * read never joins a query that started before a write it should see.
+ * 
+ * Every change to a message is recorded in a ChangeLog, which numbers it with
+ * the next version of the feed of all messages and backs
+ * GET /messages/changes. The change also bumps the version of the feed of
+ * the account that posted it. Anything derived from a feed, such as an
+ * encoded response, can be reused for as long as the feed's version hasn't
+ * moved.
+ * 
+ * Each message also has a version stored with it in the database, bumped by
+ * every edit. Edits can be made conditional on it (optimistic concurrency
+ * control): updateMessageText() with an expected version only applies if
+ * nobody else edited the message since, and throws a
+ * VersionConflictException if someone did. Versions of recently read
+ * messages are cached like the messages themselves.
+ * 
+ * Setting the "socialmedia.groupCommit.enabled" system property to true
+ * makes createMessage() insert through a GroupCommitWriter, which commits
+ * concurrently posted messages together instead of one transaction each.
+ * 
+ * The writes also have async variants, which run on the DatabaseExecutor
+ * and return a CompletableFuture, so callers don't wait on JDBC.
  */
 public class MessageService {
+    /** Page size used when a client asks for a page without a limit */
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    /** Largest page a client may ask for */
+    public static final int MAX_PAGE_SIZE = 200;
+    /** Most messages a client may create in one batch */
+    public static final int MAX_BATCH_SIZE = Integer.getInteger("socialmedia.batch.maxSize", 1000);
+
+    private static final long MESSAGE_CACHE_SIZE = Long.getLong("socialmedia.cache.messages.maxSize", 10_000);
+    private static final long MESSAGE_CACHE_TTL_SECONDS = Long.getLong("socialmedia.cache.messages.ttlSeconds", 300);
+
+    private static final long MISSING_CACHE_SIZE = Long.getLong("socialmedia.cache.missing.maxSize", 100_000);
+    private static final long MISSING_CACHE_TTL_SECONDS = Long.getLong("socialmedia.cache.missing.ttlSeconds", 30);
+
+    private static final boolean GROUP_COMMIT = Boolean.getBoolean("socialmedia.groupCommit.enabled");
+
     public MessageDAO messageDAO;
+    /** Inserts new messages in groups, or "null" to insert them one by one */
+    private final GroupCommitWriter groupCommitWriter;
+
+    /** Recent changes, numbered with the version of the feed of all messages */
+    private final ChangeLog changeLog = new ChangeLog();
+    /** Pushes changes to live subscribers */
+    private final MessageBus messageBus = new MessageBus();
+    /** Called with every change, on the writer's thread */
+    private final List<Consumer<MessageChange>> changeListeners = new CopyOnWriteArrayList<>();
+    /** Feed version of each account's most recent change */
+    private final Map<Integer, Long> accountFeedVersions = new ConcurrentHashMap<>();
+    /** Identifies this service's version counters, which start over from 0 */
+    private final long versionEpoch = ThreadLocalRandom.current().nextLong();
+
+    /** Messages by message_id */
+    private final Cache<Integer, Message> messageCache = Caffeine.newBuilder()
+        .maximumSize(MESSAGE_CACHE_SIZE)
+        .expireAfterWrite(Duration.ofSeconds(MESSAGE_CACHE_TTL_SECONDS))
+        .recordStats()
+        .build();
+
+    /** Edits and deletes of cached messages so far */
+    private final AtomicLong messageInvalidations = new AtomicLong();
+
+    /** Database versions of messages by message_id */
+    private final Cache<Integer, Long> messageVersions = Caffeine.newBuilder()
+        .maximumSize(MESSAGE_CACHE_SIZE)
+        .expireAfterWrite(Duration.ofSeconds(MESSAGE_CACHE_TTL_SECONDS))
+        .build();
+
+    private final LongAdder unconditionalEdits = new LongAdder();
+    private final LongAdder conditionalEdits = new LongAdder();
+    private final LongAdder editConflicts = new LongAdder();
+
+    /** Messages of each account in chronological post order */
+    private final TimelineCache timelineCache = new TimelineCache();
+
+    /** Loads of messages missing from the cache, by message_id */
+    private final SingleFlight<Integer, Message> messageLoads = new SingleFlight<>("message");
+    /** Loads of the feed of all messages, by feed version */
+    private final SingleFlight<Long, List<Message>> feedLoads = new SingleFlight<>("feed");
+    /** Loads of uncached account feeds, by account and feed version */
+    private final SingleFlight<String, List<Message>> accountFeedLoads = new SingleFlight<>("account-feed");
+    /** Loads of pages of all messages, by feed version, cursor and size */
+    private final SingleFlight<String, MessagePage> pageLoads = new SingleFlight<>("page");
+    /** Loads of pages of an account's messages, by account, feed version, cursor and size */
+    private final SingleFlight<String, MessagePage> accountPageLoads = new SingleFlight<>("account-page");
+
+    /** IDs of messages known not to exist */
+    private final Cache<Integer, Boolean> missingMessageIds = Caffeine.newBuilder()
+        .maximumSize(MISSING_CACHE_SIZE)
+        .expireAfterWrite(Duration.ofSeconds(MISSING_CACHE_TTL_SECONDS))
+        .recordStats()
+        .build();
+    /** Messages created so far, so reads can tell if one raced them */
+    private final AtomicLong messageCreations = new AtomicLong();
+    /** Highest message_id created so far */
+    private final AtomicInteger highestCreatedId = new AtomicInteger();
     
     // CONSTRUCTORS //
     /**
      * No-args constructor for MessageService which creates an MessageDAO.
      */
     public MessageService(){
-        messageDAO = new MessageDAO();
+        this(new MessageDAO(), GROUP_COMMIT);
     }
 
     /**
@@ -27,7 +171,20 @@ public class MessageService {
      * @param messageDAO
      */
     public MessageService(MessageDAO messageDAO){
+        this(messageDAO, false);
+    }
+
+    /**
+     * Constructor for a MessageService that may commit new messages in
+     * groups.
+     * 
+     * @param messageDAO
+     * @param groupCommit   Whether createMessage() inserts through a
+     *                      GroupCommitWriter
+     */
+    public MessageService(MessageDAO messageDAO, boolean groupCommit){
         this.messageDAO = messageDAO;
+        this.groupCommitWriter = groupCommit ? new GroupCommitWriter(messageDAO) : null;
     }
 
     // CREATE OPERATIONS //
@@ -50,17 +207,74 @@ public class MessageService {
             return null;
         }
 
-        return this.messageDAO.insertMessage(message);
+        Message addedMessage = groupCommitWriter != null
+            ? groupCommitWriter.insert(message)
+            : this.messageDAO.insertMessage(message);
+        if(addedMessage != null) {
+            markCreated(addedMessage.getMessage_id());
+            messageCache.put(addedMessage.getMessage_id(), addedMessage);
+            timelineCache.add(addedMessage);
+            recordChange(MessageChange.Type.CREATED, addedMessage);
+        }
+
+        return addedMessage;
+    }
+
+    /**
+     * Creates many messages at once, inserting all the valid ones in a
+     * single transaction.
+     * 
+     * Each message is validated like in createMessage(), and one that fails
+     * validation (or couldn't be read at all, passed as "null") is reported
+     * without holding back the others.
+     * 
+     * @param messages  The new messages to be created
+     * 
+     * @return  One result per message, in the same order
+     */
+    public List<MessageBatchResult> createMessages(List<Message> messages) {
+        List<MessageBatchResult> results = new ArrayList<>(messages.size());
+        List<Message> valid = new ArrayList<>(messages.size());
+        List<Integer> validIndexes = new ArrayList<>(messages.size());
+
+        for(int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            String error = validate(message);
+            results.add(error == null ? null : MessageBatchResult.invalid(i, error));
+            if(error == null) {
+                valid.add(message);
+                validIndexes.add(i);
+            }
+        }
+
+        List<Message> addedMessages = this.messageDAO.insertMessages(valid);
+        for(int j = 0; j < validIndexes.size(); j++) {
+            int index = validIndexes.get(j);
+            Message addedMessage = addedMessages.get(j);
+            if(addedMessage == null) {
+                results.set(index, MessageBatchResult.failed(index, "posted_by doesn't exist or the insert failed"));
+                continue;
+            }
+
+            markCreated(addedMessage.getMessage_id());
+            messageCache.put(addedMessage.getMessage_id(), addedMessage);
+            timelineCache.add(addedMessage);
+            recordChange(MessageChange.Type.CREATED, addedMessage);
+            results.set(index, MessageBatchResult.created(index, addedMessage));
+        }
+
+        return results;
     }
 
     // READ OPERATIONS //
     /**
-     * Gets all messages in chronological post order.
+     * Gets all messages in chronological post order. Concurrent calls while
+     * the feed doesn't change share one query.
      * 
      * @return  All messages
      */
     public List<Message> getAllMessages() {
-        return this.messageDAO.getAllMessages();
+        return feedLoads.load(getFeedVersion(), () -> this.messageDAO.getAllMessages());
     }
 
     /**
@@ -70,18 +284,183 @@ public class MessageService {
      * @return  All messages by one account
      */
     public List<Message> getAllMessagesByAccount(int account_id) {
-        return this.messageDAO.getAllMessagesByAccountId(account_id);
+        List<Message> timeline = getTimeline(account_id);
+        if(timeline != null) {
+            return timeline;
+        }
+
+        return accountFeedLoads.load(account_id + "/" + getAccountFeedVersion(account_id),
+            () -> this.messageDAO.getAllMessagesByAccountId(account_id));
+    }
+
+    /**
+     * Gets the most recent messages by one account, newest first, from its
+     * cached timeline if it fits in the cache.
+     * 
+     * @param account_id    ID of the account that we want messages from
+     * @param limit         Maximum number of messages
+     * 
+     * @return  Up to limit messages by one account, newest first
+     */
+    public List<Message> getRecentMessagesByAccount(int account_id, int limit) {
+        List<Message> timeline = getTimeline(account_id);
+        if(timeline == null) {
+            return this.messageDAO.getRecentMessagesByAccountId(account_id, limit);
+        }
+
+        List<Message> recent = new ArrayList<>(Math.min(limit, timeline.size()));
+        for(int i = timeline.size() - 1; i >= 0 && recent.size() < limit; i--) {
+            recent.add(timeline.get(i));
+        }
+        return recent;
+    }
+
+    /**
+     * Streams all messages in chronological post order to a consumer, one at
+     * a time, without collecting them in memory.
+     * 
+     * @param consumer  Receives each message in order
+     * 
+     * @throws IOException  if the consumer failed to handle a message
+     */
+    public void streamAllMessages(MessageConsumer consumer) throws IOException {
+        this.messageDAO.streamAllMessages(consumer);
+    }
+
+    /**
+     * Streams all messages in chronological post order by one account to a
+     * consumer, one at a time, without collecting them in memory.
+     * 
+     * @param account_id    ID of the account that we want all messages from
+     * @param consumer      Receives each message in order
+     * 
+     * @throws IOException  if the consumer failed to handle a message
+     */
+    public void streamAllMessagesByAccount(int account_id, MessageConsumer consumer) throws IOException {
+        List<Message> timeline = getTimeline(account_id);
+        if(timeline != null) {
+            for(Message message : timeline) {
+                consumer.accept(message);
+            }
+            return;
+        }
+
+        this.messageDAO.streamAllMessagesByAccountId(account_id, consumer);
+    }
+
+    /**
+     * Gets one page of all messages in chronological post order.
+     * 
+     * @param after     Cursor to start after, or "null" for the first page
+     * @param limit     Requested page size, capped to MAX_PAGE_SIZE
+     * 
+     * @return  Page of messages
+     */
+    public MessagePage getMessagesPage(MessageCursor after, int limit) {
+        int pageSize = clampPageSize(limit);
+        return pageLoads.load(pageKey(getFeedVersion(), after, pageSize),
+            () -> this.messageDAO.getMessagesPage(after, pageSize));
     }
 
     /**
-     * Gets message with the corresponding ID.
+     * Gets one page of messages in chronological post order by one account.
+     * 
+     * @param account_id    ID of the account that we want messages from
+     * @param after         Cursor to start after, or "null" for the first
+     *                      page
+     * @param limit         Requested page size, capped to MAX_PAGE_SIZE
+     * 
+     * @return  Page of messages by one account
+     */
+    public MessagePage getMessagesPageByAccount(int account_id, MessageCursor after, int limit) {
+        int pageSize = clampPageSize(limit);
+        return accountPageLoads.load(account_id + "/" + pageKey(getAccountFeedVersion(account_id), after, pageSize),
+            () -> this.messageDAO.getMessagesPageByAccountId(account_id, after, pageSize));
+    }
+
+    /**
+     * Gets message with the corresponding ID, from the cache if possible.
      * 
      * @param message_id    ID of the message that we want
      * @return  Singular message with the specified ID, or "null" if it wasn't
      *          successfully retrieved
      */
     public Message getMessage(int message_id) {
-        return this.messageDAO.getMessageById(message_id);
+        if(isKnownMissing(message_id)) {
+            return null;
+        }
+
+        Message message = messageCache.getIfPresent(message_id);
+        if(message == null) {
+            // Concurrent misses share one query. It runs outside the cache's
+            // locks, so a slow read doesn't block other keys, and
+            // cacheLoaded() keeps it out if the message changed meanwhile
+            message = messageLoads.load(message_id, () -> {
+                long creations = messageCreations.get();
+                long invalidations = messageInvalidations.get();
+                Message loaded = this.messageDAO.getMessageById(message_id);
+                if(loaded == null) {
+                    markMissing(message_id, creations);
+                    return null;
+                }
+                return cacheLoaded(loaded, invalidations);
+            });
+        }
+
+        return message;
+    }
+
+    /**
+     * Gets many messages by ID at once. Messages in the cache are served
+     * from it, and all the others are read in a single query.
+     * 
+     * @param message_ids   IDs of the messages that we want, at most
+     *                      MAX_PAGE_SIZE of them
+     * 
+     * @return  The messages found, in the order their IDs were asked for
+     *          (without repeats), and the IDs that don't exist
+     */
+    public MessageLookup getMessages(List<Integer> message_ids) {
+        Set<Integer> requested = new LinkedHashSet<>(message_ids);
+
+        List<Integer> candidates = new ArrayList<>(requested.size());
+        for(int message_id : requested) {
+            if(!isKnownMissing(message_id)) {
+                candidates.add(message_id);
+            }
+        }
+        Map<Integer, Message> found = new HashMap<>(messageCache.getAllPresent(candidates));
+        List<Integer> uncached = new ArrayList<>(candidates.size() - found.size());
+        for(int message_id : candidates) {
+            if(!found.containsKey(message_id)) {
+                uncached.add(message_id);
+            }
+        }
+        if(!uncached.isEmpty()) {
+            long invalidations = messageInvalidations.get();
+            long creations = messageCreations.get();
+            for(Message message : this.messageDAO.getMessagesByIds(uncached)) {
+                found.put(message.getMessage_id(), cacheLoaded(message, invalidations));
+            }
+            for(int message_id : uncached) {
+                if(!found.containsKey(message_id)) {
+                    markMissing(message_id, creations);
+                }
+            }
+        }
+
+        List<Message> messages = new ArrayList<>(found.size());
+        List<Integer> missing = new ArrayList<>();
+        for(int message_id : requested) {
+            Message message = found.get(message_id);
+            if(message != null) {
+                messages.add(message);
+            } else {
+                missing.add(message_id);
+            }
+        }
+
+        return new MessageLookup(messages, missing);
     }
 
     // UPDATE OPERATIONS //
@@ -95,6 +474,7 @@ public class MessageService {
      * @return  Message if it was successfully updated, or "null" if it
      *          wasn't successfully updated or if updated messaged text is
      *          blank or too long
+     * @throws DataAccessException  if the update failed
      */
     public Message updateMessageText(int message_id, Message message) {
         // Check new message text isn't blank
@@ -106,7 +486,54 @@ public class MessageService {
             return null;
         }
 
-        return this.messageDAO.updateMessageTextById(message_id, message);
+        unconditionalEdits.increment();
+        Message updatedMessage = this.messageDAO.updateMessageTextById(message_id, message);
+        invalidateMessage(message_id);
+        if(updatedMessage != null) {
+            timelineCache.invalidate(updatedMessage.getPosted_by());
+            recordChange(MessageChange.Type.UPDATED, updatedMessage);
+        }
+
+        return updatedMessage;
+    }
+
+    /**
+     * Updates the text of a message, but only if it's still at the version
+     * the edit was based on.
+     * 
+     * @param message_id    ID of the message to update
+     * @param message       Message object with the new text
+     * @param version       Version of the message the edit was based on
+     * 
+     * @return  The updated message, whose version is now version + 1, or
+     *          "null" if the new text is blank or too long or the message
+     *          doesn't exist
+     * 
+     * @throws VersionConflictException if the message was edited by someone
+     *                                  else since
+     * @throws DataAccessException      if the update failed
+     */
+    public Message updateMessageText(int message_id, Message message, long version) {
+        if(validate(message) != null) {
+            return null;
+        }
+
+        conditionalEdits.increment();
+        Message updatedMessage = this.messageDAO.updateMessageTextByIdIfVersion(message_id, message, version);
+        invalidateMessage(message_id);
+        if(updatedMessage != null) {
+            timelineCache.invalidate(updatedMessage.getPosted_by());
+            recordChange(MessageChange.Type.UPDATED, updatedMessage);
+            return updatedMessage;
+        }
+
+        // Either someone else got there first or there's no such message
+        Long currentVersion = getMessageVersion(message_id);
+        if(currentVersion != null) {
+            editConflicts.increment();
+            throw new VersionConflictException(message_id, currentVersion);
+        }
+        return null;
     }
 
     // DELETE OPERATIONS
@@ -114,8 +541,352 @@ public class MessageService {
      * Deletes message with the corresponding ID.
      * 
      * @param message_id    ID of the message that we want to delete
+     * 
+     * @return  The deleted message, or "null" if there was no such message
+     * @throws DataAccessException  if the delete failed
      */
     public Message deleteMessageById(int message_id) {
-        return this.messageDAO.deleteMessageById(message_id);
+        // Always asks the database: a message created since its ID was
+        // remembered as missing must still be deletable
+        long creations = messageCreations.get();
+        Message deletedMessage = this.messageDAO.deleteMessageById(message_id);
+        invalidateMessage(message_id);
+        if(deletedMessage != null) {
+            // IDs are never reused, so it's gone for good
+            missingMessageIds.put(message_id, Boolean.TRUE);
+            timelineCache.remove(deletedMessage);
+            recordChange(MessageChange.Type.DELETED, deletedMessage);
+        } else {
+            // The delete found no row. A failed delete throws instead and
+            // never gets here, since the message may well still exist
+            markMissing(message_id, creations);
+        }
+
+        return deletedMessage;
+    }
+
+    // ASYNC OPERATIONS //
+    /**
+     * createMessage(), run on the DatabaseExecutor.
+     * 
+     * @return  Completes with the created message or "null" as in
+     *          createMessage(), or exceptionally if the executor is
+     *          overloaded
+     */
+    public CompletableFuture<Message> createMessageAsync(Message message) {
+        return DatabaseExecutor.supply(() -> createMessage(message));
+    }
+
+    /**
+     * updateMessageText(), run on the DatabaseExecutor.
+     * 
+     * @return  Completes with the updated message or "null" as in
+     *          updateMessageText(), or exceptionally with a
+     *          DataAccessException if the update failed, or if the executor
+     *          is overloaded
+     */
+    public CompletableFuture<Message> updateMessageTextAsync(int message_id, Message message) {
+        return DatabaseExecutor.supply(() -> updateMessageText(message_id, message));
+    }
+
+    /**
+     * The conditional updateMessageText(), run on the DatabaseExecutor.
+     * 
+     * @return  Completes with the updated message or "null" as in
+     *          updateMessageText(), or exceptionally with a
+     *          VersionConflictException if the message was edited since, a
+     *          DataAccessException if the update failed, or if the executor
+     *          is overloaded
+     */
+    public CompletableFuture<Message> updateMessageTextAsync(int message_id, Message message, long version) {
+        return DatabaseExecutor.supply(() -> updateMessageText(message_id, message, version));
+    }
+
+    /**
+     * deleteMessageById(), run on the DatabaseExecutor.
+     * 
+     * @return  Completes with the deleted message or "null" as in
+     *          deleteMessageById(), or exceptionally with a
+     *          DataAccessException if the delete failed, or if the executor
+     *          is overloaded
+     */
+    public CompletableFuture<Message> deleteMessageByIdAsync(int message_id) {
+        return DatabaseExecutor.supply(() -> deleteMessageById(message_id));
+    }
+
+    /**
+     * getMessageVersion(), run on the DatabaseExecutor.
+     * 
+     * @return  Completes with the version or "null" as in
+     *          getMessageVersion(), or exceptionally if the executor is
+     *          overloaded
+     */
+    public CompletableFuture<Long> getMessageVersionAsync(int message_id) {
+        return DatabaseExecutor.supply(() -> getMessageVersion(message_id));
+    }
+
+    // CHANGES //
+    /**
+     * Gets the changes to messages after a client's token.
+     * 
+     * @param since     Token from the client's last request, or "null" if it
+     *                  has none yet
+     * @param limit     Most changes to return, clamped to MAX_PAGE_SIZE
+     * 
+     * @return  The changes after the token and the token to continue from,
+     *          or a resync signal if the token is missing, from before a
+     *          restart or too old
+     */
+    public MessageChanges getChangesSince(ChangeToken since, int limit) {
+        // Read the version before the log, so the resync token is never
+        // ahead of the feed the client then reloads
+        long version = changeLog.getVersion();
+
+        List<MessageChange> changes = null;
+        if(since != null && since.getEpoch() == versionEpoch) {
+            changes = changeLog.since(since.getVersion(), clampPageSize(limit));
+        }
+        if(changes == null) {
+            String token = new ChangeToken(versionEpoch, version).encode();
+            return new MessageChanges(new ArrayList<>(), token, true, false);
+        }
+
+        long last = changes.isEmpty() ? since.getVersion() : changes.get(changes.size() - 1).getVersion();
+        return new MessageChanges(changes, new ChangeToken(versionEpoch, last).encode(), false,
+            last < changeLog.getVersion());
+    }
+
+    /**
+     * Registers a listener to be called with every change, right after it's
+     * recorded and on the thread that made it. Listeners keep derived
+     * caches, such as home timelines, up to date and must be quick.
+     * 
+     * @param listener  Called with each change
+     */
+    public void addChangeListener(Consumer<MessageChange> listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * @return  Bus pushing every change to live subscribers
+     */
+    public MessageBus getMessageBus() {
+        return messageBus;
+    }
+
+    // VERSIONS //
+    /**
+     * @return  Random ID of this service's version counters, so versions
+     *          from different services (or runs) can be told apart
+     */
+    public long getVersionEpoch() {
+        return versionEpoch;
+    }
+
+    /**
+     * @return  Current version of the feed of all messages
+     */
+    public long getFeedVersion() {
+        return changeLog.getVersion();
+    }
+
+    /**
+     * @param account_id    ID of the account
+     * 
+     * @return  Current version of the account's feed
+     */
+    public long getAccountFeedVersion(int account_id) {
+        return accountFeedVersions.getOrDefault(account_id, 0L);
+    }
+
+    /**
+     * @param message_id    ID of the message
+     * 
+     * @return  Current database version of the message, or "null" if it
+     *          doesn't exist
+     */
+    public Long getMessageVersion(int message_id) {
+        if(isKnownMissing(message_id)) {
+            return null;
+        }
+        return messageVersions.get(message_id, id -> {
+            long creations = messageCreations.get();
+            Long loaded = this.messageDAO.getMessageVersionById(id);
+            // Text cached, or being read, before this version was read may
+            // be older than it, and must not be served with its ETag
+            messageInvalidations.incrementAndGet();
+            messageCache.invalidate(id);
+            if(loaded == null) {
+                // The version cache can't hold nulls, so remember the miss
+                markMissing(id, creations);
+            }
+            return loaded;
+        });
+    }
+
+    // METRICS //
+    /**
+     * @return  Hit, miss and eviction counts of every cache in this service
+     */
+    public List<CacheMetrics> getCacheMetrics() {
+        List<CacheMetrics> metrics = new ArrayList<>();
+        metrics.add(CacheMetrics.of("messages", messageCache));
+        metrics.add(CacheMetrics.of("missing-messages", missingMessageIds));
+        metrics.add(timelineCache.getMetrics());
+
+        return metrics;
+    }
+
+    /**
+     * @return  How many edits were conditional and how many of those
+     *          conflicted
+     */
+    public EditStats getEditStats() {
+        return new EditStats(unconditionalEdits.sum(), conditionalEdits.sum(), editConflicts.sum());
+    }
+
+    /**
+     * @return  How many reads ran their own query and how many shared one
+     *          already running, for each kind of read
+     */
+    public List<SingleFlightStats> getSingleFlightStats() {
+        List<SingleFlightStats> stats = new ArrayList<>();
+        stats.add(messageLoads.getStats());
+        stats.add(feedLoads.getStats());
+        stats.add(accountFeedLoads.getStats());
+        stats.add(pageLoads.getStats());
+        stats.add(accountPageLoads.getStats());
+
+        return stats;
+    }
+
+    /**
+     * @return  How new messages have been grouped into commits
+     */
+    public GroupCommitStats getGroupCommitStats() {
+        return groupCommitWriter != null ? groupCommitWriter.getStats() : GroupCommitStats.DISABLED;
+    }
+
+    // HELPERS //
+    /**
+     * Records a change in the change log, bumps the versions of the
+     * message's account's feed and the global feed, and passes the change on to
+     * change listeners and live subscribers. Called after the change is
+     * written to the database and to the caches, so a reader that sees the
+     * new version also sees the new data.
+     */
+    private void recordChange(MessageChange.Type type, Message message) {
+        MessageChange change = changeLog.append(type, message);
+        long version = change.getVersion();
+        accountFeedVersions.merge(message.getPosted_by(), version, Math::max);
+
+        for(Consumer<MessageChange> listener : changeListeners) {
+            listener.accept(change);
+        }
+        messageBus.publish(change, new ChangeToken(versionEpoch, version).encode());
+    }
+
+    /**
+     * @return  The account's cached timeline, loading it if needed, or
+     *          "null" if it's too long to cache
+     */
+    private List<Message> getTimeline(int account_id) {
+        return timelineCache.get(account_id,
+            limit -> this.messageDAO.getMessagesPageByAccountId(account_id, null, limit).getMessages());
+    }
+
+    /**
+     * Caches a message read from the DAO, unless an edit, delete or version
+     * read has invalidated messages since the read began, in which case the
+     * message read may already be stale.
+     * 
+     * @return  The message to return: a copy cached in the meantime, or the
+     *          one read
+     */
+    private Message cacheLoaded(Message loaded, long invalidationsBefore) {
+        // Checked under the entry's lock, so an invalidation either sees the
+        // entry or is seen here
+        Message cached = messageCache.asMap().compute(loaded.getMessage_id(), (id, current) -> {
+            if(current != null) {
+                return current;
+            }
+            return messageInvalidations.get() == invalidationsBefore ? loaded : null;
+        });
+        return cached != null ? cached : loaded;
+    }
+
+    /**
+     * @return  Why a new message is invalid, or "null" if it's valid
+     */
+    private static String validate(Message message) {
+        if(message == null) {
+            return "Not a valid message";
+        }
+        if(message.getMessage_text() == null || message.getMessage_text().isEmpty()) {
+            return "message_text is blank";
+        }
+        if(message.getMessage_text().length() > 253) {
+            return "message_text is longer than 253 characters";
+        }
+        return null;
+    }
+
+    /**
+     * Makes a created message visible to reads that remembered its ID as
+     * missing. Called once the message has committed.
+     */
+    private void markCreated(int message_id) {
+        highestCreatedId.accumulateAndGet(message_id, Math::max);
+        messageCreations.incrementAndGet();
+        missingMessageIds.invalidate(message_id);
+    }
+
+    /**
+     * Remembers that a read found no message with an ID, unless a message
+     * with that ID may have been created since the read began: a read that
+     * missed it could otherwise hide it for the TTL of the negative cache.
+     * 
+     * @param creationsBefore   messageCreations before the read began
+     */
+    private void markMissing(int message_id, long creationsBefore) {
+        // Checked under the entry's lock, so markCreated() either removes the
+        // entry afterwards or has already bumped the counters seen here
+        missingMessageIds.asMap().compute(message_id, (id, missing) -> {
+            if(messageCreations.get() == creationsBefore || message_id > highestCreatedId.get()) {
+                return Boolean.TRUE;
+            }
+            return missing;
+        });
+    }
+
+    /**
+     * @return  Whether the message was recently found not to exist
+     */
+    private boolean isKnownMissing(int message_id) {
+        return missingMessageIds.getIfPresent(message_id) != null;
+    }
+
+    /**
+     * Drops an edited or deleted message's cached text and version once the
+     * change has committed, so they're reloaded instead of being written
+     * through: two edits can get here in the opposite order to their
+     * commits. The text goes first, so a reader never pairs the new version
+     * with the old text.
+     */
+    private void invalidateMessage(int message_id) {
+        messageInvalidations.incrementAndGet();
+        messageCache.invalidate(message_id);
+        messageVersions.invalidate(message_id);
+    }
+
+    /**
+     * @return  Key of a page of a feed at a version
+     */
+    private static String pageKey(long version, MessageCursor after, int pageSize) {
+        return version + "/" + (after == null ? "" : after.encode()) + "/" + pageSize;
+    }
+
+    private static int clampPageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
     }
 }
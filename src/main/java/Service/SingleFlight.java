@@ -0,0 +1,87 @@
+package Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent reads: the first caller for a key runs the
+ * query, and every caller that asks for the same key while it's running
+ * waits for it and gets the same result instead of running the query again.
+ *
+ * Nothing is kept once the query finishes, so unlike a cache this never
+ * serves old data to a caller that arrives later. Keys should include
+ * whatever version the result depends on, so a read that starts after a
+ * write doesn't join a query that started before it.
+ *
+ * Results are shared between callers, so they must not be modified.
+ */
+public class SingleFlight<K, V> {
+    private final String name;
+
+    /** Queries running right now by key */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param name  Name the counters are reported under
+     */
+    public SingleFlight(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Runs a query, or joins the one already running for the same key.
+     *
+     * @param key       Identifies the query and the version it reads
+     * @param loader    Runs the query
+     *
+     * @return  The query's result, shared with everyone who joined it
+     */
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> started = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, started);
+        if (running != null) {
+            coalesced.increment();
+            return join(running);
+        }
+
+        loads.increment();
+        try {
+            V result = loader.get();
+            started.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            started.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, started);
+        }
+    }
+
+    /**
+     * @return  How many queries ran and how many callers joined one instead
+     */
+    public SingleFlightStats getStats() {
+        return new SingleFlightStats(name, inFlight.size(), loads.sum(), coalesced.sum());
+    }
+
+    private static <V> V join(CompletableFuture<V> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            // Fail the same way the caller that ran the query did
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package Service;
+
+/**
+ * A point-in-time snapshot of one SingleFlight, exposed as JSON on
+ * GET /metrics/coalescing.
+ */
+public class SingleFlightStats {
+    private final String name;
+    private final int inFlight;
+    private final long loads;
+    private final long coalesced;
+
+    SingleFlightStats(String name, int inFlight, long loads, long coalesced) {
+        this.name = name;
+        this.inFlight = inFlight;
+        this.loads = loads;
+        this.coalesced = coalesced;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Queries running right now */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /** Queries that were run */
+    public long getLoads() {
+        return loads;
+    }
+
+    /** Requests that joined a query already running instead of running their own */
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    /** Share of requests that joined a running query */
+    public double getCoalescedRatio() {
+        return loads + coalesced == 0 ? 0 : (double) coalesced / (loads + coalesced);
+    }
+
+    @Override
+    public String toString() {
+        return "SingleFlightStats{" +
+                "name='" + name + '\'' +
+                ", inFlight=" + inFlight +
+                ", loads=" + loads +
+                ", coalesced=" + coalesced +
+                '}';
+    }
+}
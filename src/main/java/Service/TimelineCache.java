@@ -0,0 +1,159 @@
+package Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import Model.Message;
+import Util.CacheMetrics;
+
+/**
+ * This is an in-memory cache of each account's messages in chronological
+ * post order, the list GET /accounts/{account_id}/messages returns.
+ *
+ * Timelines are read far more often than they're written, so instead of
+ * re-querying on every write MessageService patches the cached timeline in
+ * place: new messages are inserted at their position and deleted messages
+ * are removed. Each cached timeline is an immutable list that's swapped out
+ * on every change, so readers never see a half-applied edit. Edits drop the
+ * timeline instead, since two edits of one message can finish in the
+ * opposite order to their commits, and patching in the later one's text
+ * could leave the earlier one's in place.
+ *
+ * The cache is bounded by the approximate memory its timelines take
+ * (socialmedia.cache.timelines.maxBytes, default 32 MB), and cold accounts
+ * are evicted first. Timelines also expire after
+ * socialmedia.cache.timelines.ttlSeconds (default 600), which bounds how long
+ * changes made outside MessageService go unseen. Accounts with more than
+ * socialmedia.cache.timelines.maxMessages messages (default 1000) aren't
+ * cached at all; their timelines are streamed from the database instead.
+ */
+public class TimelineCache {
+    private static final long MAX_BYTES = Long.getLong("socialmedia.cache.timelines.maxBytes", 32L * 1024 * 1024);
+    private static final int MAX_MESSAGES = Integer.getInteger("socialmedia.cache.timelines.maxMessages", 1000);
+    private static final long TTL_SECONDS = Long.getLong("socialmedia.cache.timelines.ttlSeconds", 600);
+
+    /** Rough per-message overhead of the Message object and list slot */
+    private static final int MESSAGE_OVERHEAD_BYTES = 64;
+
+    /** Chronological post order, with message_id breaking ties */
+    static final Comparator<Message> CHRONOLOGICAL = Comparator
+        .comparingLong(Message::getTime_posted_epoch)
+        .thenComparingInt(Message::getMessage_id);
+
+    /** Timelines by account_id */
+    private final Cache<Integer, List<Message>> timelines = Caffeine.newBuilder()
+        .maximumWeight(MAX_BYTES)
+        .weigher((Integer account_id, List<Message> timeline) -> weigh(timeline))
+        .expireAfterWrite(Duration.ofSeconds(TTL_SECONDS))
+        .recordStats()
+        .build();
+
+    /** Accounts whose timelines are too long to cache */
+    private final Cache<Integer, Boolean> oversized = Caffeine.newBuilder()
+        .maximumSize(10_000)
+        .expireAfterWrite(Duration.ofMinutes(5))
+        .build();
+
+    /**
+     * Gets an account's timeline, loading and caching it if it's not cached.
+     *
+     * @param account_id    ID of the account
+     * @param loader        Loads up to the given number of the account's
+     *                      messages, in chronological post order
+     *
+     * @return  The account's timeline, or "null" if it's too long to cache
+     */
+    public List<Message> get(int account_id, IntFunction<List<Message>> loader) {
+        if (oversized.getIfPresent(account_id) != null) {
+            return null;
+        }
+
+        return timelines.get(account_id, id -> {
+            // Ask for one more message than we'd cache to tell if it fits
+            List<Message> timeline = loader.apply(MAX_MESSAGES + 1);
+            if (timeline.size() > MAX_MESSAGES) {
+                oversized.put(id, Boolean.TRUE);
+                return null;
+            }
+            return Collections.unmodifiableList(new ArrayList<>(timeline));
+        });
+    }
+
+    /**
+     * Inserts a newly created message into its account's cached timeline.
+     *
+     * @param message   The created message
+     */
+    public void add(Message message) {
+        timelines.asMap().computeIfPresent(message.getPosted_by(), (account_id, timeline) -> {
+            int index = Collections.binarySearch(timeline, message, CHRONOLOGICAL);
+            if (index >= 0) {
+                return timeline;    // Already loaded along with the timeline
+            }
+            if (timeline.size() >= MAX_MESSAGES) {
+                oversized.put(account_id, Boolean.TRUE);
+                return null;
+            }
+
+            List<Message> updated = new ArrayList<>(timeline.size() + 1);
+            updated.addAll(timeline);
+            updated.add(-index - 1, message);
+            return Collections.unmodifiableList(updated);
+        });
+    }
+
+    /**
+     * Drops an account's cached timeline, so it's reloaded from the database
+     * on the next read.
+     *
+     * @param account_id    ID of the account
+     */
+    public void invalidate(int account_id) {
+        timelines.invalidate(account_id);
+    }
+
+    /**
+     * Removes a deleted message from its account's cached timeline.
+     *
+     * @param message   The deleted message
+     */
+    public void remove(Message message) {
+        timelines.asMap().computeIfPresent(message.getPosted_by(), (account_id, timeline) -> {
+            int index = Collections.binarySearch(timeline, message, CHRONOLOGICAL);
+            if (index < 0) {
+                return timeline;
+            }
+
+            List<Message> updated = new ArrayList<>(timeline);
+            updated.remove(index);
+            return Collections.unmodifiableList(updated);
+        });
+        oversized.invalidate(message.getPosted_by());
+    }
+
+    /**
+     * @return  Hit, miss and eviction counts of the cache
+     */
+    public CacheMetrics getMetrics() {
+        return CacheMetrics.of("timelines", timelines);
+    }
+
+    /**
+     * @return  Approximate size of a timeline in memory, in bytes
+     */
+    private static int weigh(List<Message> timeline) {
+        long bytes = 0;
+        for (Message message : timeline) {
+            String text = message.getMessage_text();
+            bytes += MESSAGE_OVERHEAD_BYTES + (text == null ? 0 : 2L * text.length());
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,30 @@
+package Service;
+
+/**
+ * Thrown when a conditional edit was based on a version of a message that
+ * isn't its current version anymore, because someone else edited it since.
+ */
+public class VersionConflictException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int message_id;
+    private final long currentVersion;
+
+    /**
+     * @param message_id        ID of the message
+     * @param currentVersion    Version the message is at now
+     */
+    public VersionConflictException(int message_id, long currentVersion) {
+        super("Message " + message_id + " is at version " + currentVersion);
+        this.message_id = message_id;
+        this.currentVersion = currentVersion;
+    }
+
+    public int getMessage_id() {
+        return message_id;
+    }
+
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+}
@@ -0,0 +1,160 @@
+package Util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A limit on how many requests may be in progress at once that adapts to
+ * their latency, in the style of a gradient limiter.
+ *
+ * It tracks a short-term and a long-term moving average of request latency.
+ * While they agree, requests aren't queueing anywhere and the limit creeps
+ * up by about its square root per adjustment. Once the short-term average
+ * rises above the long-term one by more than TOLERANCE, requests are waiting
+ * on something (database threads, connections, locks), and the limit shrinks
+ * in proportion, down to half of what it was. A request that failed because
+ * something downstream was overloaded shrinks it by DROP_FACTOR straight
+ * away. Adjustments are smoothed, and the limit stays between its minimum
+ * and maximum. If requests stay slow, the long-term average catches up over
+ * some hundreds of requests and the limit grows again, so a lasting change
+ * in how long requests take becomes the new normal.
+ *
+ * Acquiring is lock-free; recording a latency takes a short lock.
+ */
+public class AdaptiveConcurrencyLimit {
+    /** How much slower than usual requests may get before the limit shrinks */
+    private static final double TOLERANCE = 1.5;
+    /** Weight of the newest adjustment */
+    private static final double SMOOTHING = 0.2;
+    /** Factor the limit shrinks by when a request is dropped */
+    private static final double DROP_FACTOR = 0.9;
+    /** Weights of a new latency in the short-term and long-term averages */
+    private static final double SHORT_WEIGHT = 0.1;
+    private static final double LONG_WEIGHT = 0.002;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /** The limit acquire() checks, the floor of estimatedLimit */
+    private volatile int limit;
+
+    /** Guarded by this */
+    private double estimatedLimit;
+    private double shortLatencyNanos;
+    private double longLatencyNanos;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param name          Name the limit is reported under
+     * @param initialLimit  Limit until there are latencies to go by
+     * @param minLimit      Lowest the limit goes
+     * @param maxLimit      Highest the limit goes
+     */
+    public AdaptiveConcurrencyLimit(String name, int initialLimit, int minLimit, int maxLimit) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.estimatedLimit = clamp(initialLimit);
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * Takes a slot for a request if the limit allows it. Every successful
+     * call must be followed by exactly one call to release().
+     *
+     * @return  Whether the request may go ahead
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                accepted.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a request's slot and adjusts the limit to how it went.
+     *
+     * @param latencyNanos  How long the request took
+     * @param wasDropped    Whether it failed because something downstream
+     *                      was overloaded, rather than being served
+     */
+    public void release(long latencyNanos, boolean wasDropped) {
+        int inFlightBefore = inFlight.getAndDecrement();
+        if (wasDropped) {
+            dropped.increment();
+            onDropped();
+        } else {
+            onSample(latencyNanos, inFlightBefore);
+        }
+    }
+
+    /**
+     * @return  Current limit, in-flight requests and how many were turned
+     *          away
+     */
+    public ConcurrencyLimitStats getStats() {
+        double shortLatency;
+        double longLatency;
+        synchronized (this) {
+            shortLatency = shortLatencyNanos;
+            longLatency = longLatencyNanos;
+        }
+        return new ConcurrencyLimitStats(name, limit, minLimit, maxLimit, inFlight.get(), accepted.sum(),
+            rejected.sum(), dropped.sum(), toMillis(shortLatency), toMillis(longLatency));
+    }
+
+    private synchronized void onSample(long latencyNanos, int inFlightBefore) {
+        if (longLatencyNanos == 0) {
+            shortLatencyNanos = latencyNanos;
+            longLatencyNanos = latencyNanos;
+            return;
+        }
+        shortLatencyNanos += (latencyNanos - shortLatencyNanos) * SHORT_WEIGHT;
+        longLatencyNanos += (latencyNanos - longLatencyNanos) * LONG_WEIGHT;
+
+        // After a long stretch of slow requests the long-term average is
+        // inflated too, so let it catch up once they get fast again
+        if (longLatencyNanos > 2 * shortLatencyNanos) {
+            longLatencyNanos *= 0.95;
+        }
+
+        // A limit that isn't being used says nothing about a bigger one
+        if (inFlightBefore < estimatedLimit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatencyNanos / shortLatencyNanos));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        setEstimatedLimit(estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+    }
+
+    private synchronized void onDropped() {
+        setEstimatedLimit(estimatedLimit * DROP_FACTOR);
+    }
+
+    private void setEstimatedLimit(double newLimit) {
+        estimatedLimit = clamp(newLimit);
+        limit = (int) estimatedLimit;
+    }
+
+    private double clamp(double newLimit) {
+        return Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,79 @@
+package Util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * A point-in-time snapshot of one in-memory cache, exposed as JSON on
+ * GET /metrics/caches.
+ */
+public class CacheMetrics {
+    private final String name;
+    private final long size;
+    private final long hits;
+    private final long misses;
+    private final double hitRatio;
+    private final long evictions;
+
+    public CacheMetrics(String name, long size, long hits, long misses, long evictions) {
+        this.name = name;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.hitRatio = hits + misses == 0 ? 0 : hits / (double) (hits + misses);
+        this.evictions = evictions;
+    }
+
+    /**
+     * Takes a snapshot of a Caffeine cache built with recordStats().
+     *
+     * @param name      Name the cache is reported under
+     * @param cache     The cache
+     *
+     * @return  Snapshot of the cache
+     */
+    public static CacheMetrics of(String name, Cache<?, ?> cache) {
+        CacheStats stats = cache.stats();
+        return new CacheMetrics(name, cache.estimatedSize(), stats.hitCount(), stats.missCount(),
+            stats.evictionCount());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Approximate number of entries currently cached */
+    public long getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /** Fraction of lookups served from the cache */
+    public double getHitRatio() {
+        return hitRatio;
+    }
+
+    /** Entries removed to stay within the size bound or because they expired */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheMetrics{" +
+                "name='" + name + '\'' +
+                ", size=" + size +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", hitRatio=" + hitRatio +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
@@ -0,0 +1,95 @@
+package Util;
+
+/**
+ * A point-in-time snapshot of one AdaptiveConcurrencyLimit, exposed as JSON
+ * on GET /metrics/limits.
+ */
+public class ConcurrencyLimitStats {
+    private final String name;
+    private final int limit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int inFlight;
+    private final long accepted;
+    private final long rejected;
+    private final long dropped;
+    private final double shortLatencyMillis;
+    private final double longLatencyMillis;
+
+    ConcurrencyLimitStats(String name, int limit, int minLimit, int maxLimit, int inFlight, long accepted,
+                          long rejected, long dropped, double shortLatencyMillis, double longLatencyMillis) {
+        this.name = name;
+        this.limit = limit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.inFlight = inFlight;
+        this.accepted = accepted;
+        this.rejected = rejected;
+        this.dropped = dropped;
+        this.shortLatencyMillis = shortLatencyMillis;
+        this.longLatencyMillis = longLatencyMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Most requests allowed in progress right now */
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /** Requests in progress */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /** Requests let through */
+    public long getAccepted() {
+        return accepted;
+    }
+
+    /** Requests turned away because the limit was reached */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /** Requests let through that failed because something downstream was overloaded */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /** Moving average of recent request latency */
+    public double getShortLatencyMillis() {
+        return shortLatencyMillis;
+    }
+
+    /** Moving average of request latency over a longer stretch */
+    public double getLongLatencyMillis() {
+        return longLatencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimitStats{" +
+                "name='" + name + '\'' +
+                ", limit=" + limit +
+                ", minLimit=" + minLimit +
+                ", maxLimit=" + maxLimit +
+                ", inFlight=" + inFlight +
+                ", accepted=" + accepted +
+                ", rejected=" + rejected +
+                ", dropped=" + dropped +
+                ", shortLatencyMillis=" + shortLatencyMillis +
+                ", longLatencyMillis=" + longLatencyMillis +
+                '}';
+    }
+}
@@ -0,0 +1,317 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of database connections sitting in front of ConnectionUtil.
+ *
+ * ConnectionUtil hands out a brand new H2 session on every call. The pool
+ * keeps those sessions open and lends them out instead: at most "maxSize"
+ * connections exist at once, callers wait up to "borrowTimeoutMillis" for one
+ * to free up, idle connections are validated before reuse and closed once
+ * they've been idle for "idleTimeoutMillis", and any connection held longer
+ * than "leakThresholdMillis" is logged along with the stack that borrowed it.
+ * Each pooled connection also caches up to "statementCacheSize" prepared
+ * statements, so repeated queries skip parsing and planning.
+ *
+ * Connections handed out by getConnection() MUST be closed by the caller,
+ * which returns them to the pool. The DAOs do this in a finally block.
+ *
+ * Settings are read once from system properties:
+ * socialmedia.pool.enabled                 false to hand out unpooled
+ *                                          connections (default true)
+ * socialmedia.pool.maxSize                 default 10
+ * socialmedia.pool.borrowTimeoutMillis     default 5000
+ * socialmedia.pool.idleTimeoutMillis       default 60000
+ * socialmedia.pool.validationMillis        idle time after which a connection
+ *                                          is validated on borrow
+ *                                          (default 5000)
+ * socialmedia.pool.leakThresholdMillis     0 disables leak detection
+ *                                          (default 10000)
+ * socialmedia.pool.statementCacheSize      prepared statements cached per
+ *                                          connection, 0 disables caching
+ *                                          (default 32)
+ */
+public class ConnectionPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private static final boolean enabled =
+        Boolean.parseBoolean(System.getProperty("socialmedia.pool.enabled", "true"));
+    private static final int maxSize = Integer.getInteger("socialmedia.pool.maxSize", 10);
+    private static final long borrowTimeoutMillis = Long.getLong("socialmedia.pool.borrowTimeoutMillis", 5000);
+    static final long idleTimeoutMillis = Long.getLong("socialmedia.pool.idleTimeoutMillis", 60000);
+    static final long validationMillis = Long.getLong("socialmedia.pool.validationMillis", 5000);
+    private static final long leakThresholdMillis = Long.getLong("socialmedia.pool.leakThresholdMillis", 10000);
+    private static final int statementCacheSize = Integer.getInteger("socialmedia.pool.statementCacheSize", 32);
+
+    /** One permit per connection that may be borrowed */
+    private static final Semaphore permits = new Semaphore(maxSize, true);
+    /** Idle connections, most recently returned first so warm ones get reused */
+    static final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private static final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+
+    // Statistics
+    private static final AtomicInteger waiters = new AtomicInteger();
+    private static final LongAdder borrows = new LongAdder();
+    private static final LongAdder borrowNanos = new LongAdder();
+    private static final AtomicLong maxBorrowNanos = new AtomicLong();
+    private static final LongAdder borrowTimeouts = new LongAdder();
+    private static final LongAdder created = new LongAdder();
+    private static final LongAdder evicted = new LongAdder();
+    private static final LongAdder leaks = new LongAdder();
+    private static final LongAdder statementHits = new LongAdder();
+    private static final LongAdder statementMisses = new LongAdder();
+    private static final LongAdder statementEvictions = new LongAdder();
+
+    /**
+     * Background thread that evicts idle connections and looks for leaks.
+     */
+    private static final ScheduledExecutorService housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "connection-pool-housekeeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        if (enabled) {
+            housekeeper.scheduleWithFixedDelay(ConnectionPool::housekeep, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    private ConnectionPool() {
+    }
+
+
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none are idle
+     * and the pool isn't full.
+     *
+     * @return  An open connection, which must be closed to return it
+     *
+     * @throws SQLTimeoutException  if no connection freed up within the
+     *                              borrow timeout
+     * @throws SQLException         if a new connection couldn't be opened
+     */
+    public static Connection getConnection() throws SQLException {
+        if (!enabled) {
+            return openPhysical();
+        }
+
+        long start = System.nanoTime();
+
+        waiters.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                borrowTimeouts.increment();
+                throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis
+                    + " ms waiting for a database connection (" + borrowed.size() + " in use)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        } finally {
+            waiters.decrementAndGet();
+        }
+
+        try {
+            PooledConnection pooled = takeIdle();
+            if (pooled == null) {
+                pooled = new PooledConnection(openPhysical(), statementCacheSize);
+                created.increment();
+            }
+
+            pooled.borrowedAtNanos = System.nanoTime();
+            pooled.borrowSite = leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowed.add(pooled);
+
+            recordBorrow(pooled.borrowedAtNanos - start);
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes a connection obtained from getConnection(), returning it to the
+     * pool. Does nothing if the connection is null.
+     *
+     * @param connection    Connection to close
+     */
+    public static void close(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * @return  Current statistics of the pool
+     */
+    public static PoolStats getStats() {
+        long borrowCount = borrows.sum();
+        double averageBorrowMillis = borrowCount == 0 ? 0 : borrowNanos.sum() / (double) borrowCount / 1_000_000;
+
+        return new PoolStats(
+            maxSize,
+            borrowed.size(),
+            idle.size(),
+            waiters.get(),
+            borrowCount,
+            borrowTimeouts.sum(),
+            averageBorrowMillis,
+            maxBorrowNanos.get() / 1_000_000.0,
+            created.sum(),
+            evicted.sum(),
+            leaks.sum(),
+            statementHits.sum(),
+            statementMisses.sum(),
+            statementEvictions.sum());
+    }
+
+
+
+    static boolean statementCacheEnabled() {
+        return statementCacheSize > 0;
+    }
+
+    static void recordStatementHit() {
+        statementHits.increment();
+    }
+
+    static void recordStatementMiss() {
+        statementMisses.increment();
+    }
+
+    static void recordStatementEviction() {
+        statementEvictions.increment();
+    }
+
+    /**
+     * Called by a connection handle when it is closed. Puts the physical
+     * connection back in the idle pool, or discards it if it's unusable.
+     *
+     * @param pooled    The connection being returned
+     */
+    static void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+
+        try {
+            if (pooled.physical.isClosed()) {
+                evicted.increment();
+                return;
+            }
+
+            // Don't let one caller's open transaction leak into the next
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+
+            pooled.borrowSite = null;
+            pooled.idleSinceNanos = System.nanoTime();
+            idle.push(pooled);
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            pooled.closePhysical();
+            evicted.increment();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Takes the most recently used idle connection, validating it first if
+     * it has been idle for a while. Connections that fail validation are
+     * discarded.
+     *
+     * @return  A usable idle connection, or "null" if there are none
+     */
+    private static PooledConnection takeIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.poll()) != null) {
+            long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pooled.idleSinceNanos);
+            if (idleMillis < validationMillis || isValid(pooled)) {
+                return pooled;
+            }
+            pooled.closePhysical();
+            evicted.increment();
+        }
+        return null;
+    }
+
+    private static boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static Connection openPhysical() throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        if (connection == null) {
+            throw new SQLException("Could not open a database connection");
+        }
+        return connection;
+    }
+
+    private static void recordBorrow(long nanos) {
+        borrows.increment();
+        borrowNanos.add(nanos);
+        maxBorrowNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Closes connections that have sat idle past the idle timeout, and logs
+     * any connection that has been borrowed for longer than the leak
+     * threshold.
+     */
+    static void housekeep() {
+        long now = System.nanoTime();
+
+        for (PooledConnection pooled : idle) {
+            long idleMillis = TimeUnit.NANOSECONDS.toMillis(now - pooled.idleSinceNanos);
+            if (idleMillis >= idleTimeoutMillis && idle.remove(pooled)) {
+                pooled.closePhysical();
+                evicted.increment();
+            }
+        }
+
+        if (leakThresholdMillis <= 0) {
+            return;
+        }
+        for (PooledConnection pooled : borrowed) {
+            long heldMillis = TimeUnit.NANOSECONDS.toMillis(now - pooled.borrowedAtNanos);
+            Throwable borrowSite = pooled.borrowSite;
+            if (heldMillis >= leakThresholdMillis && !pooled.leakReported && borrowSite != null) {
+                pooled.leakReported = true;
+                leaks.increment();
+                LOGGER.warn("Connection held for " + heldMillis + " ms, possible leak", borrowSite);
+            }
+        }
+    }
+}
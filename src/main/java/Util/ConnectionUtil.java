@@ -62,11 +62,16 @@ public class ConnectionUtil {
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
 	 * file in resources. This will be performed before every test.
+	 * 
+	 * The "follows" table added by MigrationRunner is dropped as well, since the
+	 * recreated accounts reuse the old account IDs. The next migration recreates it.
 	 */
 	public static void resetTestDatabase() {
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			Connection connection = getConnection();
+			connection.createStatement().execute("drop table if exists follows");
+			RunScript.execute(connection, sqlReader);
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
 		}
@@ -0,0 +1,158 @@
+package Util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of threads that run blocking database work for the async
+ * service methods, so request threads don't wait on JDBC.
+ *
+ * There are socialmedia.db.threads threads (default: the connection pool's
+ * socialmedia.pool.maxSize, so a task never waits for a connection), and at
+ * most socialmedia.db.queueSize tasks (default 1000) wait for one. A full
+ * queue fails new work right away with a RejectedExecutionException, and
+ * work still queued socialmedia.db.timeoutMillis (default 5000) after it was
+ * submitted is skipped and fails with a TimeoutException rather than run
+ * late. Either way the work never ran, and isOverloaded() is true.
+ *
+ * Work that has started always runs to the end, so its future reports what
+ * really happened in the database. Callers that can't wait that long for
+ * it wrap it in withTimeout(), and the controller answers with a 503
+ * message (service unavailable) when that times out instead of holding the
+ * request forever.
+ */
+public class DatabaseExecutor {
+    private static final int THREADS =
+        Integer.getInteger("socialmedia.db.threads", Integer.getInteger("socialmedia.pool.maxSize", 10));
+    private static final int QUEUE_SIZE = Integer.getInteger("socialmedia.db.queueSize", 1000);
+    private static final long TIMEOUT_MILLIS = Long.getLong("socialmedia.db.timeoutMillis", 5000);
+
+    private static final ThreadPoolExecutor executor = createExecutor();
+    private static final ScheduledThreadPoolExecutor deadlines = createDeadlines();
+
+    private static final LongAdder submitted = new LongAdder();
+    private static final LongAdder rejected = new LongAdder();
+    private static final LongAdder timedOut = new LongAdder();
+    private static final LongAdder skipped = new LongAdder();
+
+    private DatabaseExecutor() {
+    }
+
+    /**
+     * Runs blocking database work on the executor.
+     *
+     * @param work  The work, typically a synchronous service method
+     *
+     * @return  Completes with the work's result, or exceptionally if it
+     *          threw, or never ran because the queue was full or it waited
+     *          too long for a thread
+     */
+    public static <T> CompletableFuture<T> supply(Supplier<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        submitted.increment();
+
+        // Whichever of the task and its deadline claims it first decides
+        // whether the work runs
+        AtomicBoolean claimed = new AtomicBoolean();
+        ScheduledFuture<?> deadline = deadlines.schedule(() -> {
+            if (claimed.compareAndSet(false, true)) {
+                skipped.increment();
+                future.completeExceptionally(
+                    new TimeoutException("Waited " + TIMEOUT_MILLIS + " ms for a database thread"));
+            }
+        }, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        try {
+            executor.execute(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                deadline.cancel(false);
+                try {
+                    future.complete(work.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            deadline.cancel(false);
+            rejected.increment();
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Bounds how long a caller waits for work from supply(). The work itself
+     * carries on, and still completes the future that was passed in.
+     *
+     * @param future    A future depending on work from supply()
+     *
+     * @return  Completes like the future, or with a TimeoutException if it
+     *          takes longer than socialmedia.db.timeoutMillis
+     */
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future) {
+        CompletableFuture<T> bounded = future.copy().orTimeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        bounded.whenComplete((result, e) -> {
+            if (e instanceof TimeoutException) {
+                timedOut.increment();
+            }
+        });
+        return bounded;
+    }
+
+    /**
+     * @param e     How a future from supply() or withTimeout() failed,
+     *              possibly wrapped in a CompletionException
+     *
+     * @return  Whether it failed because the executor was overloaded (its
+     *          queue was full, or the work or the wait for it timed out)
+     *          rather than because the work itself threw
+     */
+    public static boolean isOverloaded(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof TimeoutException || cause instanceof RejectedExecutionException;
+    }
+
+    /**
+     * @return  Current statistics of the executor
+     */
+    public static DatabaseExecutorStats getStats() {
+        return new DatabaseExecutorStats(THREADS, executor.getActiveCount(), executor.getQueue().size(),
+            QUEUE_SIZE, TIMEOUT_MILLIS, submitted.sum(), rejected.sum(), timedOut.sum(), skipped.sum());
+    }
+
+    private static ScheduledThreadPoolExecutor createDeadlines() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "database-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Most work starts in time, so don't keep its deadline around
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        AtomicInteger threads = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(QUEUE_SIZE), r -> {
+                Thread thread = new Thread(r, "database-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
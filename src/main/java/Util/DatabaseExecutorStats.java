@@ -0,0 +1,87 @@
+package Util;
+
+/**
+ * A point-in-time snapshot of the DatabaseExecutor, exposed as JSON on
+ * GET /metrics/executor.
+ */
+public class DatabaseExecutorStats {
+    private final int threads;
+    private final int active;
+    private final int queued;
+    private final int queueSize;
+    private final long timeoutMillis;
+    private final long submitted;
+    private final long rejected;
+    private final long timedOut;
+    private final long skipped;
+
+    DatabaseExecutorStats(int threads, int active, int queued, int queueSize, long timeoutMillis,
+                          long submitted, long rejected, long timedOut, long skipped) {
+        this.threads = threads;
+        this.active = active;
+        this.queued = queued;
+        this.queueSize = queueSize;
+        this.timeoutMillis = timeoutMillis;
+        this.submitted = submitted;
+        this.rejected = rejected;
+        this.timedOut = timedOut;
+        this.skipped = skipped;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Threads running work right now */
+    public int getActive() {
+        return active;
+    }
+
+    /** Work waiting for a thread */
+    public int getQueued() {
+        return queued;
+    }
+
+    /** Most work that may wait for a thread */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    /** Work turned away because the queue was full */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /** Callers that stopped waiting for work that didn't finish in time */
+    public long getTimedOut() {
+        return timedOut;
+    }
+
+    /** Work dropped because it waited too long for a thread */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseExecutorStats{" +
+                "threads=" + threads +
+                ", active=" + active +
+                ", queued=" + queued +
+                ", queueSize=" + queueSize +
+                ", timeoutMillis=" + timeoutMillis +
+                ", submitted=" + submitted +
+                ", rejected=" + rejected +
+                ", timedOut=" + timedOut +
+                ", skipped=" + skipped +
+                '}';
+    }
+}
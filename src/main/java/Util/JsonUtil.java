@@ -0,0 +1,59 @@
+package Util;
+
+import java.util.List;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import Model.Account;
+import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessageChange;
+import Model.MessageChanges;
+import Model.MessageLookup;
+
+/**
+ * The JsonUtil class holds the one ObjectMapper the application uses, along
+ * with readers and writers pre-built for the types the API sends and
+ * receives.
+ *
+ * ObjectMapper, ObjectReader and ObjectWriter are thread-safe and expensive
+ * to create: building them once means serializers are looked up once per
+ * type instead of once per request.
+ *
+ * Setting the "socialmedia.json.blackbird" system property to true registers
+ * Jackson's Blackbird module, which replaces reflective getter and setter
+ * calls with generated lambdas.
+ */
+public class JsonUtil {
+    public static final ObjectMapper MAPPER = createMapper();
+
+    public static final ObjectReader ACCOUNT_READER = MAPPER.readerFor(Account.class);
+    public static final ObjectWriter ACCOUNT_WRITER = MAPPER.writerFor(Account.class);
+
+    public static final ObjectReader ID_LIST_READER = MAPPER.readerFor(new TypeReference<List<Integer>>(){});
+
+    public static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+    public static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+    public static final ObjectReader MESSAGE_LIST_READER = MAPPER.readerFor(new TypeReference<List<Message>>(){});
+    public static final ObjectWriter MESSAGE_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<Message>>(){});
+    public static final ObjectWriter MESSAGE_BATCH_RESULTS_WRITER =
+        MAPPER.writerFor(new TypeReference<List<MessageBatchResult>>(){});
+    public static final ObjectWriter MESSAGE_LOOKUP_WRITER = MAPPER.writerFor(MessageLookup.class);
+    public static final ObjectWriter MESSAGE_CHANGE_WRITER = MAPPER.writerFor(MessageChange.class);
+    public static final ObjectWriter MESSAGE_CHANGES_WRITER = MAPPER.writerFor(MessageChanges.class);
+
+    private JsonUtil() {
+    }
+
+    private static ObjectMapper createMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        if (Boolean.getBoolean("socialmedia.json.blackbird")) {
+            mapper.registerModule(new BlackbirdModule());
+        }
+        return mapper;
+    }
+}
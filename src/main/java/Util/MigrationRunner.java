@@ -0,0 +1,182 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The MigrationRunner brings the database schema up to date at startup.
+ *
+ * Each migration has a version number and is applied at most once, in
+ * version order. Applied versions are recorded in the "schema_version" table
+ * so existing data survives upgrades: on startup only the migrations that
+ * haven't been applied yet are run. Every migration is written to be
+ * idempotent (CREATE ... IF NOT EXISTS and the like), so re-running one is
+ * harmless.
+ *
+ * ConnectionUtil.resetTestDatabase() drops and recreates the "account" and
+ * "message" tables without knowing about "schema_version". To notice that,
+ * the runner stamps the "message" table with a comment once it's migrated. A
+ * "message" table without the stamp was created by the baseline script, so
+ * the recorded history no longer describes it and every migration is run
+ * again.
+ *
+ * To change the schema, add a new Migration to the end of MIGRATIONS. Never
+ * edit or reorder a migration that has already been released.
+ */
+public class MigrationRunner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MigrationRunner.class);
+
+    private static final String STAMP = "migrated";
+
+    /**
+     * All migrations, in version order.
+     */
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+        new Migration(1, "Baseline account and message tables",
+            "CREATE TABLE IF NOT EXISTS account ("
+                + "account_id int primary key auto_increment, "
+                + "username varchar(255) unique, "
+                + "password varchar(255))",
+            "CREATE TABLE IF NOT EXISTS message ("
+                + "message_id int primary key auto_increment, "
+                + "posted_by int, "
+                + "message_text varchar(255), "
+                + "time_posted_epoch bigint, "
+                + "foreign key (posted_by) references account(account_id))"),
+        new Migration(2, "Index the global feed and per-account feeds",
+            "CREATE INDEX IF NOT EXISTS message_feed_idx ON message (time_posted_epoch, message_id)",
+            "CREATE INDEX IF NOT EXISTS message_account_feed_idx ON message (posted_by, time_posted_epoch, message_id)"),
+        new Migration(3, "Follow graph",
+            // No foreign keys, so resetTestDatabase() can still drop "account"
+            "CREATE TABLE IF NOT EXISTS follows ("
+                + "follower_id int not null, "
+                + "followee_id int not null, "
+                + "followed_on bigint, "
+                + "primary key (follower_id, followee_id))",
+            "CREATE INDEX IF NOT EXISTS follows_followee_idx ON follows (followee_id, follower_id)",
+            // When re-run after the account table was recreated, drop the
+            // follows of accounts that are gone
+            "DELETE FROM follows WHERE follower_id NOT IN (SELECT account_id FROM account) "
+                + "OR followee_id NOT IN (SELECT account_id FROM account)"),
+        new Migration(4, "Message versions for optimistic concurrency control",
+            "ALTER TABLE message ADD COLUMN IF NOT EXISTS version bigint DEFAULT 0 NOT NULL")
+    );
+
+    private MigrationRunner() {
+    }
+
+    /**
+     * Applies every migration that hasn't been applied yet.
+     *
+     * @throws IllegalStateException    if a migration failed, since the
+     *                                  application can't run against a
+     *                                  half-migrated schema
+     */
+    public static synchronized void migrate() {
+        Connection connection = null;
+
+        try {
+            connection = ConnectionPool.getConnection();
+
+            Statement statement = connection.createStatement();
+            statement.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                + "version int primary key, "
+                + "description varchar(255), "
+                + "applied_on bigint)");
+
+            if (!isStamped(connection)) {
+                LOGGER.info("Schema has not been migrated yet, applying all migrations");
+                statement.execute("DELETE FROM schema_version");
+            }
+
+            Set<Integer> applied = getAppliedVersions(connection);
+            for (Migration migration : MIGRATIONS) {
+                if (!applied.contains(migration.version)) {
+                    apply(connection, migration);
+                }
+            }
+
+            statement.execute("COMMENT ON TABLE message IS '" + STAMP + "'");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Database migration failed: " + e.getMessage(), e);
+        } finally {
+            ConnectionPool.close(connection);
+        }
+    }
+
+
+
+    private static boolean isStamped(Connection connection) throws SQLException {
+        String sql = "SELECT remarks FROM information_schema.tables "
+            + "WHERE table_schema = 'PUBLIC' AND table_name = 'MESSAGE'";
+        PreparedStatement ps = connection.prepareStatement(sql);
+
+        ResultSet rs = ps.executeQuery();
+        return rs.next() && STAMP.equals(rs.getString(1));
+    }
+
+    private static Set<Integer> getAppliedVersions(Connection connection) throws SQLException {
+        Set<Integer> applied = new HashSet<>();
+
+        PreparedStatement ps = connection.prepareStatement("SELECT version FROM schema_version");
+        ResultSet rs = ps.executeQuery();
+        while (rs.next()) {
+            applied.add(rs.getInt(1));
+        }
+
+        return applied;
+    }
+
+    /**
+     * Runs one migration and records it, all in a single transaction.
+     */
+    private static void apply(Connection connection, Migration migration) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            Statement statement = connection.createStatement();
+            for (String sql : migration.statements) {
+                statement.execute(sql);
+            }
+
+            PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO schema_version (version, description, applied_on) VALUES (?, ?, ?)");
+            ps.setInt(1, migration.version);
+            ps.setString(2, migration.description);
+            ps.setLong(3, System.currentTimeMillis());
+            ps.executeUpdate();
+
+            connection.commit();
+            LOGGER.info("Applied migration " + migration.version + ": " + migration.description);
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * One versioned change to the schema.
+     */
+    private static final class Migration {
+        final int version;
+        final String description;
+        final String[] statements;
+
+        Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package Util;
+
+/**
+ * A point-in-time snapshot of the ConnectionPool, exposed as JSON on
+ * GET /metrics/pool.
+ */
+public class PoolStats {
+    private final int maxSize;
+    private final int active;
+    private final int idle;
+    private final int waiters;
+    private final long borrows;
+    private final long borrowTimeouts;
+    private final double averageBorrowMillis;
+    private final double maxBorrowMillis;
+    private final long connectionsCreated;
+    private final long connectionsEvicted;
+    private final long leaksDetected;
+    private final long statementCacheHits;
+    private final long statementCacheMisses;
+    private final long statementCacheEvictions;
+
+    PoolStats(int maxSize, int active, int idle, int waiters, long borrows, long borrowTimeouts,
+              double averageBorrowMillis, double maxBorrowMillis, long connectionsCreated,
+              long connectionsEvicted, long leaksDetected, long statementCacheHits,
+              long statementCacheMisses, long statementCacheEvictions) {
+        this.maxSize = maxSize;
+        this.active = active;
+        this.idle = idle;
+        this.waiters = waiters;
+        this.borrows = borrows;
+        this.borrowTimeouts = borrowTimeouts;
+        this.averageBorrowMillis = averageBorrowMillis;
+        this.maxBorrowMillis = maxBorrowMillis;
+        this.connectionsCreated = connectionsCreated;
+        this.connectionsEvicted = connectionsEvicted;
+        this.leaksDetected = leaksDetected;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+        this.statementCacheEvictions = statementCacheEvictions;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** Connections currently borrowed by callers */
+    public int getActive() {
+        return active;
+    }
+
+    /** Open connections sitting in the pool waiting to be borrowed */
+    public int getIdle() {
+        return idle;
+    }
+
+    /** Callers currently blocked waiting for a connection */
+    public int getWaiters() {
+        return waiters;
+    }
+
+    public long getBorrows() {
+        return borrows;
+    }
+
+    public long getBorrowTimeouts() {
+        return borrowTimeouts;
+    }
+
+    /** Average time spent waiting for and preparing a connection */
+    public double getAverageBorrowMillis() {
+        return averageBorrowMillis;
+    }
+
+    public double getMaxBorrowMillis() {
+        return maxBorrowMillis;
+    }
+
+    public long getConnectionsCreated() {
+        return connectionsCreated;
+    }
+
+    public long getConnectionsEvicted() {
+        return connectionsEvicted;
+    }
+
+    public long getLeaksDetected() {
+        return leaksDetected;
+    }
+
+    /** prepareStatement calls served from a connection's statement cache */
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    public long getStatementCacheEvictions() {
+        return statementCacheEvictions;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{" +
+                "maxSize=" + maxSize +
+                ", active=" + active +
+                ", idle=" + idle +
+                ", waiters=" + waiters +
+                ", borrows=" + borrows +
+                ", borrowTimeouts=" + borrowTimeouts +
+                ", averageBorrowMillis=" + averageBorrowMillis +
+                ", maxBorrowMillis=" + maxBorrowMillis +
+                ", connectionsCreated=" + connectionsCreated +
+                ", connectionsEvicted=" + connectionsEvicted +
+                ", leaksDetected=" + leaksDetected +
+                ", statementCacheHits=" + statementCacheHits +
+                ", statementCacheMisses=" + statementCacheMisses +
+                ", statementCacheEvictions=" + statementCacheEvictions +
+                '}';
+    }
+}
@@ -0,0 +1,278 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A physical H2 connection owned by the ConnectionPool, along with the
+ * bookkeeping the pool needs to validate, evict and watch it for leaks.
+ *
+ * Callers never see this class directly. Every borrow hands out a fresh
+ * proxy "handle" whose close() returns the physical connection to the pool
+ * instead of closing it, and which refuses any further use once closed so a
+ * stale reference can't touch a connection that now belongs to someone else.
+ *
+ * Each connection also keeps an LRU cache of prepared statements keyed by
+ * their SQL text, so the DAOs' prepareStatement calls only parse and plan a
+ * query the first time a connection sees it. Statements handed out through a
+ * handle are returned to the cache (or closed, if they weren't cacheable)
+ * when the handle is closed, whether or not the caller closed them.
+ */
+final class PooledConnection {
+    final Connection physical;
+
+    /** When the connection was last handed back to the pool */
+    volatile long idleSinceNanos;
+    /** When the connection was last borrowed */
+    volatile long borrowedAtNanos;
+    /** Where the connection was last borrowed, reported if it leaks */
+    volatile Throwable borrowSite;
+    /** Whether the current borrow has already been reported as a leak */
+    volatile boolean leakReported;
+
+    /** Prepared statements by SQL text, least recently used first */
+    private final Map<String, CachedStatement> statementCache;
+
+    PooledConnection(Connection physical, int statementCacheSize) {
+        this.physical = physical;
+        this.idleSinceNanos = System.nanoTime();
+        this.statementCache = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= statementCacheSize || eldest.getValue().inUse) {
+                    return false;
+                }
+                eldest.getValue().closePhysical();
+                ConnectionPool.recordStatementEviction();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Creates a new handle for the current borrow of this connection.
+     *
+     * @return  Connection proxy whose close() releases back to the pool
+     */
+    Connection newHandle() {
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[] { Connection.class },
+            new Handle());
+    }
+
+    /**
+     * Closes the physical connection, ignoring any errors. Cached statements
+     * are closed along with it.
+     */
+    void closePhysical() {
+        try {
+            physical.close();
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Looks up a prepared statement in the cache, preparing and caching it on
+     * a miss. A statement that's already in use by this borrow (the same SQL
+     * prepared twice before the first was closed) is prepared uncached so
+     * the two don't share parameters.
+     *
+     * @param sql                   SQL text of the statement
+     * @param autoGeneratedKeys     Statement.RETURN_GENERATED_KEYS or
+     *                              Statement.NO_GENERATED_KEYS
+     *
+     * @return  The cached statement, or "null" if it couldn't be cached
+     */
+    private CachedStatement checkOutStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys + ":" + sql;
+
+        CachedStatement cached = statementCache.get(key);
+        if (cached != null && !cached.inUse) {
+            ConnectionPool.recordStatementHit();
+            cached.inUse = true;
+            return cached;
+        }
+
+        ConnectionPool.recordStatementMiss();
+        if (cached != null) {
+            return null;
+        }
+
+        cached = new CachedStatement(physical.prepareStatement(sql, autoGeneratedKeys));
+        cached.inUse = true;
+        statementCache.put(key, cached);
+        return cached;
+    }
+
+    /**
+     * A prepared statement owned by the statement cache.
+     */
+    private static final class CachedStatement {
+        final PreparedStatement physical;
+        boolean inUse;
+
+        CachedStatement(PreparedStatement physical) {
+            this.physical = physical;
+        }
+
+        /**
+         * Makes the statement available to the next caller, dropping any
+         * parameters and open results of the previous one.
+         */
+        void checkIn() {
+            inUse = false;
+            try {
+                physical.clearParameters();
+                physical.clearWarnings();
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        void closePhysical() {
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The connection handed to a caller for one borrow.
+     */
+    private final class Handle implements InvocationHandler {
+        private boolean closed = false;
+        /** Cached statements checked out during this borrow */
+        private final List<CachedStatement> checkedOut = new ArrayList<>();
+        /** Uncached statements opened during this borrow */
+        private final List<Statement> opened = new ArrayList<>();
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        releaseStatements();
+                        ConnectionPool.release(PooledConnection.this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + (closed ? ", closed]" : "]");
+                default:
+                    if (closed) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    if (method.getName().equals("prepareStatement") && isCacheable(args)) {
+                        int autoGeneratedKeys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+                        CachedStatement cached = checkOutStatement((String) args[0], autoGeneratedKeys);
+                        if (cached != null) {
+                            checkedOut.add(cached);
+                            return newStatementHandle(proxy, cached);
+                        }
+                    }
+
+                    Object result;
+                    try {
+                        result = method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (result instanceof Statement) {
+                        opened.add((Statement) result);
+                    }
+                    return result;
+            }
+        }
+
+        /**
+         * Only plain prepareStatement(sql) and
+         * prepareStatement(sql, autoGeneratedKeys) are cached.
+         */
+        private boolean isCacheable(Object[] args) {
+            return ConnectionPool.statementCacheEnabled()
+                && (args.length == 1 || (args.length == 2 && args[1] instanceof Integer));
+        }
+
+        private void releaseStatements() {
+            for (CachedStatement cached : checkedOut) {
+                if (cached.inUse) {
+                    cached.checkIn();
+                }
+            }
+            checkedOut.clear();
+
+            for (Statement statement : opened) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+            opened.clear();
+        }
+
+        /**
+         * Wraps a cached statement so that closing it returns it to the
+         * cache instead of closing it.
+         */
+        private PreparedStatement newStatementHandle(Object connectionHandle, CachedStatement cached) {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                new InvocationHandler() {
+                    private boolean statementClosed = false;
+
+                    @Override
+                    public Object invoke(Object statementProxy, Method method, Object[] args) throws Throwable {
+                        switch (method.getName()) {
+                            case "close":
+                                if (!statementClosed) {
+                                    statementClosed = true;
+                                    cached.checkIn();
+                                }
+                                return null;
+                            case "isClosed":
+                                return statementClosed || closed;
+                            case "getConnection":
+                                return connectionHandle;
+                            case "equals":
+                                return statementProxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(statementProxy);
+                            case "toString":
+                                return cached.physical.toString();
+                            default:
+                                if (statementClosed || closed) {
+                                    throw new SQLException("Statement has already been closed");
+                                }
+                                try {
+                                    return method.invoke(cached.physical, args);
+                                } catch (InvocationTargetException e) {
+                                    throw e.getCause();
+                                }
+                        }
+                    }
+                });
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package Util;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * An in-memory token-bucket rate limiter with one bucket per key (an
+ * account, a username, a client IP...).
+ *
+ * Each bucket holds up to burst tokens and refills at ratePerMinute; a
+ * request takes a token or is refused. A bucket is kept as a single
+ * AtomicLong, the time at which it would be full again (the generic cell
+ * rate algorithm), so taking a token is one compare-and-set and never
+ * locks.
+ *
+ * A bucket left alone long enough to refill is the same as a new one, so
+ * buckets idle for that long are evicted. At most maxKeys buckets are kept;
+ * past that the least recently used are evicted early, which only hands
+ * their keys a full bucket again.
+ */
+public class RateLimiter<K> {
+    private final String name;
+    private final int ratePerMinute;
+    private final int burst;
+    /** Time for one token to refill */
+    private final long intervalNanos;
+    /** Time for an empty bucket to refill */
+    private final long burstNanos;
+
+    /** Time each bucket will be full again, by key */
+    private final Cache<K, AtomicLong> buckets;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder limited = new LongAdder();
+
+    /**
+     * @param name          Name the limiter is reported under
+     * @param ratePerMinute Tokens each bucket gets back per minute
+     * @param burst         Tokens a full bucket holds
+     * @param maxKeys       Most buckets kept at once
+     */
+    public RateLimiter(String name, int ratePerMinute, int burst, long maxKeys) {
+        this.name = name;
+        this.ratePerMinute = Math.max(1, ratePerMinute);
+        this.burst = Math.max(1, burst);
+        this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / this.ratePerMinute;
+        this.burstNanos = this.burst * intervalNanos;
+        this.buckets = Caffeine.newBuilder()
+            .maximumSize(maxKeys)
+            .expireAfterAccess(Duration.ofNanos(Math.max(burstNanos, TimeUnit.SECONDS.toNanos(1))))
+            .build();
+    }
+
+    /**
+     * Takes a token from a key's bucket if it has one.
+     *
+     * @param key   Who the request is from
+     *
+     * @return  Whether the request may go ahead
+     */
+    public boolean tryAcquire(K key) {
+        AtomicLong fullAt = buckets.get(key, k -> new AtomicLong(System.nanoTime()));
+        long now = System.nanoTime();
+        while (true) {
+            long current = fullAt.get();
+            // A bucket that's already full doesn't fill any further
+            long next = (current - now > 0 ? current : now) + intervalNanos;
+            if (next - now > burstNanos) {
+                limited.increment();
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                allowed.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return  Seconds a refused request should wait before trying again,
+     *          the time it takes one token to refill, rounded up
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (intervalNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * @return  Buckets kept and how many requests were allowed and refused
+     */
+    public RateLimiterStats getStats() {
+        return new RateLimiterStats(name, ratePerMinute, burst, buckets.estimatedSize(), allowed.sum(),
+            limited.sum());
+    }
+}
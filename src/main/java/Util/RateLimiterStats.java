@@ -0,0 +1,64 @@
+package Util;
+
+/**
+ * A point-in-time snapshot of one RateLimiter, exposed as JSON on
+ * GET /metrics/rateLimits.
+ */
+public class RateLimiterStats {
+    private final String name;
+    private final int ratePerMinute;
+    private final int burst;
+    private final long keys;
+    private final long allowed;
+    private final long limited;
+
+    RateLimiterStats(String name, int ratePerMinute, int burst, long keys, long allowed, long limited) {
+        this.name = name;
+        this.ratePerMinute = ratePerMinute;
+        this.burst = burst;
+        this.keys = keys;
+        this.allowed = allowed;
+        this.limited = limited;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /** Tokens each bucket gets back per minute */
+    public int getRatePerMinute() {
+        return ratePerMinute;
+    }
+
+    /** Tokens a full bucket holds */
+    public int getBurst() {
+        return burst;
+    }
+
+    /** Buckets kept, roughly */
+    public long getKeys() {
+        return keys;
+    }
+
+    /** Requests that got a token */
+    public long getAllowed() {
+        return allowed;
+    }
+
+    /** Requests refused with a 429 */
+    public long getLimited() {
+        return limited;
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiterStats{" +
+                "name='" + name + '\'' +
+                ", ratePerMinute=" + ratePerMinute +
+                ", burst=" + burst +
+                ", keys=" + keys +
+                ", allowed=" + allowed +
+                ", limited=" + limited +
+                '}';
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.AdaptiveConcurrencyLimit;
+
+public class AdaptiveConcurrencyLimitTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+
+    /**
+     * Requests beyond the limit are rejected until a slot is given back.
+     */
+    @Test
+    public void rejectsBeyondLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 2, 1, 10);
+
+        Assert.assertTrue(limit.tryAcquire());
+        Assert.assertTrue(limit.tryAcquire());
+        Assert.assertFalse(limit.tryAcquire());
+
+        limit.release(FAST, false);
+        Assert.assertTrue(limit.tryAcquire());
+        Assert.assertEquals(1, limit.getStats().getRejected());
+        Assert.assertEquals(2, limit.getStats().getInFlight());
+    }
+
+
+    /**
+     * While the limit is fully used and latency stays flat, it grows up to its maximum.
+     */
+    @Test
+    public void growsWhileLatencyIsSteady() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 10, 4, 100);
+
+        runSaturated(limit, FAST, 200);
+
+        Assert.assertEquals(100, limit.getStats().getLimit());
+    }
+
+
+    /**
+     * Once latency climbs well above its long-term average, the limit shrinks, but not below its minimum.
+     */
+    @Test
+    public void shrinksWhenLatencyClimbs() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 50, 4, 100);
+        runSaturated(limit, FAST, 50);
+        int before = limit.getStats().getLimit();
+
+        runSaturated(limit, SLOW, 20);
+        int after = limit.getStats().getLimit();
+
+        Assert.assertTrue(before + " -> " + after, after < before / 2);
+        Assert.assertTrue(after >= 4);
+    }
+
+
+    /**
+     * A request dropped by an overloaded dependency shrinks the limit straight away.
+     */
+    @Test
+    public void shrinksWhenDropped() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 20, 4, 100);
+
+        Assert.assertTrue(limit.tryAcquire());
+        limit.release(FAST, true);
+
+        Assert.assertEquals(18, limit.getStats().getLimit());
+        Assert.assertEquals(1, limit.getStats().getDropped());
+    }
+
+
+
+    /**
+     * Fills the limit and then finishes requests with the given latency, taking a new slot for each, for the given
+     * number of rounds of a full limit each.
+     */
+    private static void runSaturated(AdaptiveConcurrencyLimit limit, long latencyNanos, int rounds) {
+        while (limit.tryAcquire()) {
+            // Fill every slot
+        }
+        for (int round = 0; round < rounds; round++) {
+            int inFlight = limit.getStats().getInFlight();
+            for (int i = 0; i < inFlight; i++) {
+                limit.release(latencyNanos, false);
+            }
+            while (limit.tryAcquire()) {
+                // Fill every slot, including new ones
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.DatabaseExecutor;
+import Util.DatabaseExecutorStats;
+import io.javalin.Javalin;
+
+public class AsyncHandlersTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending an http request to POST localhost:8080/messages while every database thread is busy and the
+     * executor's queue is full, then again once the executor has caught up
+     *
+     * Expected Response:
+     *  The first request gets 503 with a "Retry-After" header, is counted as rejected and doesn't create the
+     *  message; the second gets 200 with the new message
+     */
+    @Test
+    public void overloadedExecutorReturns503() throws IOException, InterruptedException {
+        // Let work left over from earlier tests finish, so the blockers fill every thread and queue slot
+        while (DatabaseExecutor.getStats().getActive() > 0 || DatabaseExecutor.getStats().getQueued() > 0) {
+            Thread.sleep(10);
+        }
+        DatabaseExecutorStats before = DatabaseExecutor.getStats();
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<Boolean> blocker = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        };
+        List<CompletableFuture<Boolean>> blockers = new ArrayList<>();
+        for (int i = 0; i < before.getThreads(); i++) {
+            blockers.add(DatabaseExecutor.supply(blocker));
+        }
+        // Idle threads left by earlier tests take their blockers from the queue, so wait for that before filling it
+        while (DatabaseExecutor.getStats().getActive() < before.getThreads()) {
+            Thread.sleep(10);
+        }
+        for (int i = 0; i < before.getQueueSize(); i++) {
+            blockers.add(DatabaseExecutor.supply(blocker));
+        }
+
+        String body = "{\"posted_by\":1,\"message_text\":\"while busy\",\"time_posted_epoch\":1669947792}";
+        HttpResponse<String> busy;
+        try {
+            busy = post(body);
+        } finally {
+            release.countDown();
+        }
+        CompletableFuture.allOf(blockers.toArray(new CompletableFuture<?>[0])).join();
+
+        Assert.assertEquals(503, busy.statusCode());
+        Assert.assertTrue(busy.headers().firstValue("Retry-After").isPresent());
+        Assert.assertEquals(before.getRejected() + 1, DatabaseExecutor.getStats().getRejected());
+
+        HttpResponse<String> created = post(body);
+        Assert.assertEquals(200, created.statusCode());
+        Assert.assertEquals(new Message(2, 1, "while busy", 1669947792),
+                objectMapper.readValue(created.body(), Message.class));
+    }
+
+
+
+    private HttpResponse<String> post(String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with the ETag of the previous response, before and
+     * after posting a message
+     *
+     * Expected Response:
+     *  Status Code: 304 while the feed is unchanged, then 200 with a new ETag
+     */
+    @Test
+    public void getAllMessagesNotModified() throws IOException, InterruptedException {
+        String etag = get("/messages", null).headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> response = get("/messages", etag);
+        Assert.assertEquals(304, response.statusCode());
+        Assert.assertEquals("", response.body());
+
+        post("/messages", "{\"posted_by\":1,\"message_text\":\"hello message\",\"time_posted_epoch\":1669947792}");
+
+        response = get("/messages", etag);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertNotEquals(etag, response.headers().firstValue("ETag").orElseThrow());
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages with the ETag of the previous response
+     *
+     * Expected Response:
+     *  Status Code: 304
+     */
+    @Test
+    public void getAllMessagesByAccountNotModified() throws IOException, InterruptedException {
+        String etag = get("/accounts/1/messages", null).headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> response = get("/accounts/1/messages", etag);
+        Assert.assertEquals(304, response.statusCode());
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 with the ETag of the previous response, before and
+     * after updating the message
+     *
+     * Expected Response:
+     *  Status Code: 304 while the message is unchanged, then 200 with the new text
+     */
+    @Test
+    public void getMessageByIdNotModified() throws IOException, InterruptedException {
+        String etag = get("/messages/1", null).headers().firstValue("ETag").orElseThrow();
+
+        Assert.assertEquals(304, get("/messages/1", etag).statusCode());
+
+        HttpRequest patch = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(patch, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse<String> response = get("/messages/1", etag);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().contains("updated message"));
+    }
+
+
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
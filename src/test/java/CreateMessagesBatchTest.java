@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessagesBatchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a JSON array of two valid messages, a blank
+     * message and a message by an account that doesn't exist
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one result per message, in order, with the valid messages created
+     */
+    @Test
+    public void createMessagesBatchPartialFailure() throws IOException, InterruptedException {
+        String body = "["
+                + "{\"posted_by\":1,\"message_text\":\"batch message 1\",\"time_posted_epoch\":1669947792},"
+                + "{\"posted_by\":1,\"message_text\":\"\",\"time_posted_epoch\":1669947792},"
+                + "{\"posted_by\":99,\"message_text\":\"no such account\",\"time_posted_epoch\":1669947792},"
+                + "{\"posted_by\":1,\"message_text\":\"batch message 2\",\"time_posted_epoch\":1669947793}"
+                + "]";
+        HttpResponse<String> response = post(body, "application/json");
+
+        Assert.assertEquals(200, response.statusCode());
+        JsonNode results = objectMapper.readTree(response.body());
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals("CREATED", results.get(0).get("status").asText());
+        Assert.assertEquals("INVALID", results.get(1).get("status").asText());
+        Assert.assertEquals("FAILED", results.get(2).get("status").asText());
+        Assert.assertEquals("CREATED", results.get(3).get("status").asText());
+
+        Message first = objectMapper.treeToValue(results.get(0).get("message"), Message.class);
+        Message second = objectMapper.treeToValue(results.get(3).get("message"), Message.class);
+        Assert.assertEquals(new Message(2, 1, "batch message 1", 1669947792), first);
+        Assert.assertEquals(new Message(3, 1, "batch message 2", 1669947793), second);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/3"))
+                .build();
+        HttpResponse<String> stored = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(second, objectMapper.readValue(stored.body(), Message.class));
+    }
+
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with NDJSON, one line of which isn't JSON
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the valid lines created, the broken line reported as invalid
+     */
+    @Test
+    public void createMessagesBatchNdjson() throws IOException, InterruptedException {
+        String body = "{\"posted_by\":1,\"message_text\":\"line 1\",\"time_posted_epoch\":1669947792}\n"
+                + "not json\n"
+                + "\n"
+                + "{\"posted_by\":1,\"message_text\":\"line 3\",\"time_posted_epoch\":1669947793}\n";
+        HttpResponse<String> response = post(body, "application/x-ndjson");
+
+        Assert.assertEquals(200, response.statusCode());
+        JsonNode results = objectMapper.readTree(response.body());
+        Assert.assertEquals(3, results.size());
+        Assert.assertEquals("CREATED", results.get(0).get("status").asText());
+        Assert.assertEquals("INVALID", results.get(1).get("status").asText());
+        Assert.assertEquals("CREATED", results.get(2).get("status").asText());
+    }
+
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a body that isn't a JSON array
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void createMessagesBatchMalformed() throws IOException, InterruptedException {
+        Assert.assertEquals(400, post("{\"posted_by\":1", "application/json").statusCode());
+    }
+
+
+
+    private HttpResponse<String> post(String body, String contentType) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", contentType)
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
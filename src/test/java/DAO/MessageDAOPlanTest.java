@@ -0,0 +1,107 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.MigrationRunner;
+
+/**
+ * Checks that the keyset page queries seek on their indexes instead of
+ * scanning them, using the row counts H2 reports from EXPLAIN ANALYZE.
+ */
+public class MessageDAOPlanTest {
+    private static final int MESSAGES = 5000;
+    private static final int LIMIT = 20;
+    /** Generous, but far below the MESSAGES a scan would read */
+    private static final int MAX_SCANNED = 10 * LIMIT;
+
+    /**
+     * Before every test, reset and migrate the database and insert MESSAGES messages by account 1, two per
+     * time_posted_epoch, so cursors also have to tell apart messages posted at the same time.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        MigrationRunner.migrate();
+
+        Connection connection = ConnectionPool.getConnection();
+        try {
+            PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (1, 'message', ?)");
+            for (int i = 0; i < MESSAGES; i++) {
+                ps.setLong(1, i / 2);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            ConnectionPool.close(connection);
+        }
+    }
+
+    /**
+     * EXPLAIN ANALYZE of the page after a cursor in the middle of the feed
+     *
+     * Expected Response:
+     *  The query reads about one page of index entries, not the whole index
+     */
+    @Test
+    public void pageAfterCursorSeeks() throws SQLException {
+        long scanned = scanCount(MessageDAO.PAGE_AFTER_SQL, MESSAGES / 4, MESSAGES / 4, MESSAGES / 2, LIMIT + 1);
+
+        Assert.assertTrue("scanned " + scanned + " rows", scanned <= MAX_SCANNED);
+    }
+
+    /**
+     * EXPLAIN ANALYZE of the page after a cursor in the middle of one account's messages
+     *
+     * Expected Response:
+     *  The query reads about one page of index entries, not all of the account's messages
+     */
+    @Test
+    public void accountPageAfterCursorSeeks() throws SQLException {
+        long scanned = scanCount(MessageDAO.ACCOUNT_PAGE_AFTER_SQL,
+                1, MESSAGES / 4, MESSAGES / 4, MESSAGES / 2, LIMIT + 1);
+
+        Assert.assertTrue("scanned " + scanned + " rows", scanned <= MAX_SCANNED);
+    }
+
+
+
+    /**
+     * @return  Sum of the "scanCount" figures in the plan of the query run with the parameters
+     */
+    private static long scanCount(String sql, long... parameters) throws SQLException {
+        Connection connection = ConnectionPool.getConnection();
+        try {
+            PreparedStatement ps = connection.prepareStatement("EXPLAIN ANALYZE " + sql);
+            for (int i = 0; i < parameters.length; i++) {
+                ps.setLong(i + 1, parameters[i]);
+            }
+            ResultSet rs = ps.executeQuery();
+            Assert.assertTrue(rs.next());
+
+            String plan = rs.getString(1);
+            Matcher matcher = Pattern.compile("scanCount: (\\d+)").matcher(plan);
+            long scanned = 0;
+            boolean found = false;
+            while (matcher.find()) {
+                scanned += Long.parseLong(matcher.group(1));
+                found = true;
+            }
+            Assert.assertTrue("no scanCount in plan: " + plan, found);
+            return scanned;
+        } finally {
+            ConnectionPool.close(connection);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.DataAccessException;
+import DAO.MessageConsumer;
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Service.AccountService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class DatabaseFailureTest {
+    MessageDAO messageDAO;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    Message message = new Message(1, 1, "test message 1", 1669947792);
+
+    /**
+     * Before every test, reset the database, start the Javalin app with a mock MessageDAO, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = mock(MessageDAO.class);
+        app = new SocialMediaController(new AccountService(), new MessageService(messageDAO)).startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/messages while no database connection is free, then again once
+     * one is
+     *
+     * Expected Response:
+     *  The first request gets 503 with a "Retry-After" header instead of an empty list; the second gets every
+     *  message, since the failed read wasn't cached
+     */
+    @Test
+    public void feedReadTimeoutReturns503AndIsNotCached() throws IOException, InterruptedException {
+        List<Boolean> failed = new ArrayList<>();
+        doAnswer(invocation -> {
+            if (failed.isEmpty()) {
+                failed.add(true);
+                throw new DataAccessException(new SQLTimeoutException("No free connection"));
+            }
+            invocation.<MessageConsumer>getArgument(0).accept(message);
+            return null;
+        }).when(messageDAO).streamAllMessages(any());
+
+        HttpResponse<String> busy = get("/messages");
+        HttpResponse<String> recovered = get("/messages");
+
+        Assert.assertEquals(503, busy.statusCode());
+        Assert.assertTrue(busy.headers().firstValue("Retry-After").isPresent());
+        Assert.assertEquals(200, recovered.statusCode());
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(message);
+        Assert.assertEquals(expectedResult,
+                objectMapper.readValue(recovered.body(), new TypeReference<List<Message>>(){}));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=10 while the query fails, then again once it
+     * doesn't
+     *
+     * Expected Response:
+     *  The first request gets 500 instead of an empty page; the second gets the page
+     */
+    @Test
+    public void pageReadFailureReturns500() throws IOException, InterruptedException {
+        List<Message> page = new ArrayList<>();
+        page.add(message);
+        when(messageDAO.getMessagesPage(isNull(), anyInt()))
+                .thenThrow(new DataAccessException(new SQLException("Query failed")))
+                .thenReturn(new MessagePage(page, null));
+
+        HttpResponse<String> failed = get("/messages?limit=10");
+        HttpResponse<String> recovered = get("/messages?limit=10");
+
+        Assert.assertEquals(500, failed.statusCode());
+        Assert.assertEquals(200, recovered.statusCode());
+        Assert.assertTrue(recovered.body().contains("test message 1"));
+    }
+
+    /**
+     * Sending an http request to PATCH localhost:8080/messages/1 with "If-Match" set to its current ETag while the
+     * update fails
+     *
+     * Expected Response:
+     *  Status Code: 500, not a 412 claiming someone else edited the message
+     */
+    @Test
+    public void conditionalUpdateFailureReturns500() throws IOException, InterruptedException {
+        when(messageDAO.updateMessageTextByIdIfVersion(eq(1), any(), eq(0L)))
+                .thenThrow(new DataAccessException(new SQLException("Update failed")));
+        when(messageDAO.getMessageVersionById(1)).thenReturn(0L);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .header("If-Match", "\"m1-r0\"")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(500, response.statusCode());
+    }
+
+    /**
+     * Sending an http request to PATCH localhost:8080/messages/1 while the update fails
+     *
+     * Expected Response:
+     *  Status Code: 500, not a 400 claiming the message doesn't exist
+     */
+    @Test
+    public void updateFailureReturns500() throws IOException, InterruptedException {
+        when(messageDAO.updateMessageTextById(eq(1), any()))
+                .thenThrow(new DataAccessException(new SQLException("Update failed")));
+
+        HttpResponse<String> response = send("PATCH", "/messages/1", "{\"message_text\":\"updated message\"}");
+
+        Assert.assertEquals(500, response.statusCode());
+    }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/messages/1 while no database connection is free
+     *
+     * Expected Response:
+     *  Status Code: 503 with a "Retry-After" header, not a 200 claiming there was nothing to delete
+     */
+    @Test
+    public void deleteTimeoutReturns503() throws IOException, InterruptedException {
+        when(messageDAO.deleteMessageById(1))
+                .thenThrow(new DataAccessException(new SQLTimeoutException("No free connection")));
+
+        HttpResponse<String> response = send("DELETE", "/messages/1", "");
+
+        Assert.assertEquals(503, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Retry-After").isPresent());
+    }
+
+
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,99 @@
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.GroupCommitStats;
+import Service.GroupCommitWriter;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+public class GroupCommitWriterTest {
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+
+    /**
+     * Messages queued together are committed in groups of at most maxBatchSize, and each caller gets back its own
+     * message.
+     */
+    @Test
+    public void groupsAreBoundedBySize() throws Exception {
+        MessageDAO messageDAO = mock(MessageDAO.class);
+        when(messageDAO.insertMessages(anyList())).thenAnswer(invocation -> {
+            List<Message> messages = invocation.getArgument(0);
+            List<Message> added = new ArrayList<>();
+            for (Message message : messages) {
+                added.add(new Message(Integer.parseInt(message.getMessage_text()), message.getPosted_by(),
+                        message.getMessage_text(), message.getTime_posted_epoch()));
+            }
+            return added;
+        });
+        GroupCommitWriter writer = new GroupCommitWriter(messageDAO, 4, 1000);
+
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            futures.add(writer.submit(new Message(1, Integer.toString(i), 1669947792)));
+        }
+        for (int i = 1; i <= 10; i++) {
+            Assert.assertEquals(i, futures.get(i - 1).get(5, TimeUnit.SECONDS).getMessage_id());
+        }
+
+        GroupCommitStats stats = writer.getStats();
+        Assert.assertEquals(3, stats.getGroups());
+        Assert.assertEquals(10, stats.getMessages());
+    }
+
+
+    /**
+     * Concurrent createMessage calls with group commit on all get their own generated message_id, and a message by
+     * an account that doesn't exist fails without failing the rest.
+     */
+    @Test
+    public void concurrentCreatesGetTheirOwnIds() throws Exception {
+        MessageService messageService = new MessageService(new MessageDAO(), true);
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Message>> results = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                int posted_by = i == 25 ? 99 : 1;
+                Message message = new Message(posted_by, "group message " + i, 1669947792 + i);
+                results.add(callers.submit(() -> messageService.createMessage(message)));
+            }
+
+            Set<Integer> ids = new HashSet<>();
+            for (int i = 0; i < 50; i++) {
+                Message added = results.get(i).get(5, TimeUnit.SECONDS);
+                if (i == 25) {
+                    Assert.assertNull(added);
+                    continue;
+                }
+                Assert.assertEquals("group message " + i, added.getMessage_text());
+                Assert.assertEquals(added, new MessageDAO().getMessageById(added.getMessage_id()));
+                ids.add(added.getMessage_id());
+            }
+            Assert.assertEquals(49, ids.size());
+            Assert.assertEquals(50, messageService.getGroupCommitStats().getMessages());
+        } finally {
+            callers.shutdown();
+        }
+    }
+}
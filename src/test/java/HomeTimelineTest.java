@@ -0,0 +1,257 @@
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.DataAccessException;
+import DAO.FollowDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Service.FollowService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import Util.MigrationRunner;
+import io.javalin.Javalin;
+
+public class HomeTimelineTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Account 2 follows account 1 and reads its timeline, account 1 posts and edits a message, then account 2
+     * unfollows account 1
+     *
+     * Expected Response:
+     *  The timeline has account 1's messages newest first, picks up the new message and the edit, and is empty
+     *  after unfollowing
+     */
+    @Test
+    public void homeTimelineFollowsChanges() throws IOException, InterruptedException {
+        send("POST", "/register", "{\"username\":\"testuser2\",\"password\":\"password\"}", 200);
+        send("POST", "/accounts/2/following/1", "", 200);
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expectedResult, getTimeline(2));
+
+        send("POST", "/messages", "{\"posted_by\":1,\"message_text\":\"new message\",\"time_posted_epoch\":1669947800}", 200);
+        send("PATCH", "/messages/1", "{\"message_text\":\"updated message\"}", 200);
+
+        expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(2, 1, "new message", 1669947800));
+        expectedResult.add(new Message(1, 1, "updated message", 1669947792));
+        Assert.assertEquals(expectedResult, getTimeline(2));
+
+        send("DELETE", "/accounts/2/following/1", "", 200);
+        Assert.assertEquals(new ArrayList<>(), getTimeline(2));
+    }
+
+
+    /**
+     * Following yourself or an account that doesn't exist
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void followInvalidAccount() throws IOException, InterruptedException {
+        send("POST", "/accounts/1/following/1", "", 400);
+        send("POST", "/accounts/1/following/99", "", 400);
+    }
+
+
+    /**
+     * Account 2 follows account 1, then the database is reset, account 2 is registered again with the same ID and
+     * the schema is migrated
+     *
+     * Expected Response:
+     *  The new account 2 doesn't inherit the old one's follow
+     */
+    @Test
+    public void followsDontSurviveReset() throws IOException, InterruptedException {
+        send("POST", "/register", "{\"username\":\"testuser2\",\"password\":\"password\"}", 200);
+        send("POST", "/accounts/2/following/1", "", 200);
+
+        ConnectionUtil.resetTestDatabase();
+        send("POST", "/register", "{\"username\":\"testuser3\",\"password\":\"password\"}", 200);
+        MigrationRunner.migrate();
+
+        Assert.assertEquals(new ArrayList<Integer>(), new FollowDAO().getFolloweeIds(2));
+    }
+
+
+    /**
+     * Reading a home timeline while the follow graph can't be read, then again once it can
+     *
+     * Expected Response:
+     *  The first read fails instead of caching an empty timeline; the second has the followee's message
+     */
+    @Test
+    public void failedFollowGraphLoadIsNotCached() {
+        MessageDAO messageDAO = mock(MessageDAO.class);
+        FollowDAO followDAO = mock(FollowDAO.class);
+        MessageService messageService = new MessageService(messageDAO);
+        FollowService followService = new FollowService(followDAO, messageService);
+
+        when(followDAO.getFolloweeIds(1))
+                .thenThrow(new DataAccessException(new SQLTimeoutException("No free connection")))
+                .thenReturn(Arrays.asList(2));
+        when(followDAO.countFollowers(2)).thenReturn(1);
+        Message message = new Message(1, 2, "message 1", 1669947792);
+        when(messageDAO.getMessagesPageByAccountId(eq(2), isNull(), anyInt()))
+                .thenReturn(new MessagePage(Arrays.asList(message), null));
+
+        Assert.assertThrows(DataAccessException.class, () -> followService.getHomeTimeline(1, 10));
+        Assert.assertEquals(Arrays.asList(message), followService.getHomeTimeline(1, 10));
+    }
+
+
+    /**
+     * Creating a message while its poster's followers can't be read
+     *
+     * Expected Response:
+     *  The message is still created
+     */
+    @Test
+    public void failedFanOutDoesNotFailWrite() {
+        MessageDAO messageDAO = mock(MessageDAO.class);
+        FollowDAO followDAO = mock(FollowDAO.class);
+        MessageService messageService = new MessageService(messageDAO);
+        new FollowService(followDAO, messageService);
+
+        Message message = new Message(1, "new message", 1669947792);
+        Message created = new Message(1, 1, "new message", 1669947792);
+        when(messageDAO.insertMessage(message)).thenReturn(created);
+        when(followDAO.countFollowers(1)).thenThrow(new DataAccessException(new SQLException("Query failed")));
+
+        Assert.assertEquals(created, messageService.createMessage(message));
+    }
+
+
+    /**
+     * Account 1's timeline caches a message that account 2 posted while under the fan-out threshold, then account 2
+     * crosses the threshold and deletes the message
+     *
+     * Expected Response:
+     *  The delete is still fanned out, so the copy pushed to account 1's timeline is gone
+     */
+    @Test
+    public void deleteAfterCrossingThresholdIsFannedOut() {
+        MessageDAO messageDAO = mock(MessageDAO.class);
+        FollowDAO followDAO = mock(FollowDAO.class);
+        MessageService messageService = new MessageService(messageDAO);
+        FollowService followService = new FollowService(followDAO, messageService);
+
+        Message message = new Message(1, 2, "message 1", 1669947792);
+        when(followDAO.getFolloweeIds(1)).thenReturn(Arrays.asList(2));
+        when(followDAO.getFollowerIds(2)).thenReturn(Arrays.asList(1));
+        when(followDAO.countFollowers(2)).thenReturn(1).thenReturn(1_000_000);
+        when(messageDAO.getMessagesPageByAccountId(eq(2), isNull(), anyInt()))
+                .thenReturn(new MessagePage(Arrays.asList(message), null));
+        Assert.assertEquals(Arrays.asList(message), followService.getHomeTimeline(1, 10));
+
+        when(followDAO.insertFollow(3, 2)).thenReturn(true);
+        followService.follow(3, 2);
+        when(messageDAO.deleteMessageById(1)).thenReturn(message);
+        messageService.deleteMessageById(1);
+
+        Assert.assertEquals(new ArrayList<Message>(), followService.getHomeTimeline(1, 10));
+    }
+
+
+    /**
+     * Messages of an account with at least the fan-out threshold of followers aren't fanned out, but are merged into
+     * the timeline on read.
+     */
+    @Test
+    public void highFollowerAccountMergedOnRead() {
+        MessageDAO messageDAO = mock(MessageDAO.class);
+        FollowDAO followDAO = mock(FollowDAO.class);
+        MessageService messageService = new MessageService(messageDAO);
+        FollowService followService = new FollowService(followDAO, messageService);
+
+        when(followDAO.getFolloweeIds(1)).thenReturn(Arrays.asList(2, 3));
+        when(followDAO.countFollowers(2)).thenReturn(1);
+        when(followDAO.countFollowers(3)).thenReturn(1_000_000);
+        when(messageDAO.getMessagesPageByAccountId(2, null, 1001)).thenReturn(new MessagePage(
+                Arrays.asList(new Message(1, 2, "ordinary 1", 100), new Message(3, 2, "ordinary 2", 300)), null));
+        when(messageDAO.getMessagesPageByAccountId(3, null, 1001)).thenReturn(new MessagePage(
+                Arrays.asList(new Message(2, 3, "popular 1", 200), new Message(4, 3, "popular 2", 400)), null));
+
+        List<Message> timeline = followService.getHomeTimeline(1, 3);
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(4, 3, "popular 2", 400));
+        expectedResult.add(new Message(3, 2, "ordinary 2", 300));
+        expectedResult.add(new Message(2, 3, "popular 1", 200));
+        Assert.assertEquals(expectedResult, timeline);
+        Assert.assertEquals(1, followService.getFanOutStats().getReadMergeSources());
+    }
+
+
+
+    private List<Message> getTimeline(int account_id) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + account_id + "/timeline"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private void send(String method, String path, String body, int expectedStatus)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(expectedStatus, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
@@ -0,0 +1,157 @@
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class IdempotencyKeyTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending the same POST localhost:8080/messages with the same Idempotency-Key ten times at once, then once more
+     *
+     * Expected Response:
+     *  Every response is the same created message, and only one message is created
+     */
+    @Test
+    public void retriedMessageIsCreatedOnce() throws Exception {
+        String body = "{\"posted_by\":1,\"message_text\":\"retried message\",\"time_posted_epoch\":1669947792}";
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            responses.add(webClient.sendAsync(post("/messages", body, "key-1"), HttpResponse.BodyHandlers.ofString()));
+        }
+        responses.add(CompletableFuture.completedFuture(
+                webClient.send(post("/messages", body, "key-1"), HttpResponse.BodyHandlers.ofString())));
+
+        Message expected = new Message(2, 1, "retried message", 1669947792);
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            Assert.assertEquals(200, response.get().statusCode());
+            Assert.assertEquals(expected, objectMapper.readValue(response.get().body(), Message.class));
+        }
+
+        HttpRequest getAll = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        List<Message> messages = objectMapper.readValue(
+                webClient.send(getAll, HttpResponse.BodyHandlers.ofString()).body(),
+                new TypeReference<List<Message>>(){});
+        Assert.assertEquals(2, messages.size());
+    }
+
+
+    /**
+     * Retrying POST localhost:8080/register with the same Idempotency-Key, then reusing the key for another account
+     *
+     * Expected Response:
+     *  The retry gets the original 200 response instead of a 400 for the taken username, and reusing the key with
+     *  a different body gets 422
+     */
+    @Test
+    public void retriedRegistrationReturnsOriginalResponse() throws IOException, InterruptedException {
+        String body = "{\"username\":\"user\",\"password\":\"password\"}";
+        HttpResponse<String> first = webClient.send(post("/register", body, "key-2"), HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> retry = webClient.send(post("/register", body, "key-2"), HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals(200, retry.statusCode());
+        Assert.assertEquals(first.body(), retry.body());
+        Assert.assertEquals("true", retry.headers().firstValue("Idempotent-Replayed").orElse(null));
+
+        HttpResponse<String> reused = webClient.send(
+                post("/register", "{\"username\":\"other\",\"password\":\"password\"}", "key-2"),
+                HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(422, reused.statusCode());
+    }
+
+
+    /**
+     * Sending POST localhost:8080/messages with an Idempotency-Key while inserting takes longer than the database
+     * executor's timeout, then retrying it with the same key right after the 503
+     *
+     * Expected Response:
+     *  The first request gets 503, but its insert still commits; the retry gets that message back as a replayed
+     *  200 response, and the message is inserted only once
+     */
+    @Test
+    public void retryAfterTimeoutGetsTheCommittedMessage() throws Exception {
+        app.stop();
+        MessageDAO messageDAO = spy(new MessageDAO());
+        doAnswer(invocation -> {
+            Thread.sleep(6000);     // Longer than socialmedia.db.timeoutMillis
+            return invocation.callRealMethod();
+        }).when(messageDAO).insertMessage(any());
+        app = new SocialMediaController(new AccountService(), new MessageService(messageDAO)).startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        String body = "{\"posted_by\":1,\"message_text\":\"slow message\",\"time_posted_epoch\":1669947792}";
+        HttpResponse<String> first = webClient.send(post("/messages", body, "key-3"), HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> retry = webClient.send(post("/messages", body, "key-3"), HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(503, first.statusCode());
+        Assert.assertEquals(200, retry.statusCode());
+        Assert.assertEquals("true", retry.headers().firstValue("Idempotent-Replayed").orElse(null));
+        Assert.assertEquals(new Message(2, 1, "slow message", 1669947792), objectMapper.readValue(retry.body(), Message.class));
+        verify(messageDAO, times(1)).insertMessage(any());
+    }
+
+
+    private HttpRequest post(String path, String body, String idempotencyKey) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", idempotencyKey)
+                .build();
+    }
+}
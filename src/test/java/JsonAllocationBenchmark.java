@@ -0,0 +1,72 @@
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import Model.Message;
+import Util.JsonUtil;
+
+/**
+ * Measures the JSON work a POST /messages request does (read the body, write the created message) in bytes
+ * allocated and time per request, comparing a new ObjectMapper per request with the shared readers and writers in
+ * JsonUtil. This is not part of the test suite; run its main method with the test classpath after
+ * mvn test-compile.
+ */
+public class JsonAllocationBenchmark {
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 100_000;
+
+    private static final String BODY =
+            "{\"posted_by\":1,\"message_text\":\"hello message\",\"time_posted_epoch\":1669947792}";
+
+    public static void main(String[] args) throws Exception {
+        byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+
+        ObjectMapper blackbird = new ObjectMapper().registerModule(new BlackbirdModule());
+        ObjectReader blackbirdReader = blackbird.readerFor(Message.class);
+        ObjectWriter blackbirdWriter = blackbird.writerFor(Message.class);
+
+        run("new ObjectMapper per request", () -> {
+            ObjectMapper mapper = new ObjectMapper();
+            Message message = mapper.readValue(new String(body, StandardCharsets.UTF_8), Message.class);
+            return mapper.writeValueAsString(message).getBytes(StandardCharsets.UTF_8).length;
+        });
+        run("shared reader/writer", () -> {
+            Message message = JsonUtil.MESSAGE_READER.readValue(body);
+            return JsonUtil.MESSAGE_WRITER.writeValueAsBytes(message).length;
+        });
+        run("shared reader/writer + blackbird", () -> {
+            Message message = blackbirdReader.readValue(body);
+            return blackbirdWriter.writeValueAsBytes(message).length;
+        });
+    }
+
+    private interface Request {
+        int handle() throws Exception;
+    }
+
+    private static void run(String name, Request request) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += request.handle();
+        }
+
+        long startBytes = threads.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += request.handle();
+        }
+        long nanos = System.nanoTime() - startNanos;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+
+        System.out.printf("%-36s %10d bytes/request %10.2f us/request (%d)%n",
+                name, bytes / ITERATIONS, nanos / 1000.0 / ITERATIONS, sink);
+    }
+}
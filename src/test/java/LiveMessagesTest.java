@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageChange;
+import Service.MessageBus;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class LiveMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Subscribing to GET localhost:8080/accounts/1/messages/live, then posting a message for account 1
+     *
+     * Expected Response:
+     *  A "created" event whose data is the new message
+     */
+    @Test
+    public void liveStreamReceivesCreatedMessage() throws Exception {
+        HttpRequest subscribe = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages/live"))
+                .header("Accept", "text/event-stream")
+                .build();
+        HttpResponse<Stream<String>> stream = webClient.send(subscribe, HttpResponse.BodyHandlers.ofLines());
+        Assert.assertEquals(200, stream.statusCode());
+
+        HttpRequest post = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1,\"message_text\":\"hello message\",\"time_posted_epoch\":1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(post, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Iterator<String> lines = stream.body().iterator();
+        CompletableFuture<String> data = CompletableFuture.supplyAsync(() -> {
+            boolean created = false;
+            while (lines.hasNext()) {
+                String line = lines.next();
+                if (line.equals("event: created")) {
+                    created = true;
+                } else if (created && line.startsWith("data: ")) {
+                    return line;
+                }
+            }
+            return null;
+        });
+
+        String line = data.get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(line.contains("\"message_text\":\"hello message\""));
+        stream.body().close();
+    }
+
+
+    /**
+     * A subscriber whose sink stalls is dropped and closed once its queue overflows, without blocking the
+     * publisher.
+     */
+    @Test
+    public void slowSubscriberIsDropped() throws Exception {
+        MessageBus messageBus = new MessageBus();
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        messageBus.subscribe(null, new MessageBus.Sink() {
+            @Override
+            public void send(String id, String event, String json) throws InterruptedException {
+                stalled.await();
+            }
+
+            @Override
+            public void heartbeat() {
+            }
+
+            @Override
+            public void close() {
+                closed.countDown();
+            }
+        });
+
+        Message message = new Message(1, 1, "test message 1", 1669947792);
+        for (int i = 1; i <= 1000; i++) {
+            messageBus.publish(new MessageChange(i, MessageChange.Type.UPDATED, message), Integer.toString(i));
+        }
+
+        Assert.assertEquals(1, messageBus.getStats().getSlowConsumersDropped());
+        Assert.assertEquals(0, messageBus.getStats().getSubscribers());
+
+        stalled.countDown();
+        Assert.assertTrue(closed.await(5, TimeUnit.SECONDS));
+    }
+
+
+    /**
+     * As many stalled subscribers as there are delivery threads, each stuck writing to its client until its sink is
+     * closed, fall behind and are dropped while another subscriber waits for a delivery thread.
+     *
+     * Expected Response:
+     *  Dropping them fails their stuck writes, so the other subscriber gets its event
+     */
+    @Test
+    public void droppedSubscribersFreeDeliveryThreads() throws Exception {
+        MessageBus messageBus = new MessageBus();
+        int threads = Integer.getInteger("socialmedia.live.deliveryThreads", 4);
+        int queueSize = Integer.getInteger("socialmedia.live.queueSize", 256);
+        CountDownLatch writing = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            CountDownLatch closed = new CountDownLatch(1);
+            messageBus.subscribe(2, new MessageBus.Sink() {
+                @Override
+                public void send(String id, String event, String json) throws Exception {
+                    writing.countDown();
+                    closed.await(30, TimeUnit.SECONDS);
+                    throw new IOException("Connection aborted");
+                }
+
+                @Override
+                public void heartbeat() {
+                }
+
+                @Override
+                public void close() {
+                    closed.countDown();
+                }
+            });
+        }
+        CountDownLatch received = new CountDownLatch(1);
+        messageBus.subscribe(1, new MessageBus.Sink() {
+            @Override
+            public void send(String id, String event, String json) {
+                received.countDown();
+            }
+
+            @Override
+            public void heartbeat() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        Message stalledMessage = new Message(1, 2, "test message 1", 1669947792);
+        messageBus.publish(new MessageChange(1, MessageChange.Type.UPDATED, stalledMessage), "1");
+        Assert.assertTrue(writing.await(5, TimeUnit.SECONDS));
+        Message message = new Message(2, 1, "test message 2", 1669947792);
+        messageBus.publish(new MessageChange(2, MessageChange.Type.UPDATED, message), "2");
+
+        for (int i = 3; i <= queueSize + 3; i++) {
+            messageBus.publish(new MessageChange(i, MessageChange.Type.UPDATED, stalledMessage), Integer.toString(i));
+        }
+
+        Assert.assertEquals(threads, messageBus.getStats().getSlowConsumersDropped());
+        Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.DatabaseExecutor;
+import io.javalin.Javalin;
+
+public class LoadSheddingTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending more concurrent http requests to POST localhost:8080/messages than the write limit allows, while the
+     * database threads are busy so none of them finish, and a GET localhost:8080/messages/1 meanwhile
+     *
+     * Expected Response:
+     *  The requests over the limit get 503 with a "Retry-After" header straight away, the read still gets 200, and
+     *  once the database threads are free the rest get 200 and every slot is given back
+     */
+    @Test
+    public void writesOverLimitAreShed() throws Exception {
+        JsonNode writes = limit("writes");
+        int limit = writes.get("limit").asInt();
+        int extra = 5;
+
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Boolean>> blockers = new ArrayList<>();
+        for (int i = 0; i < DatabaseExecutor.getStats().getThreads(); i++) {
+            blockers.add(DatabaseExecutor.supply(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }));
+        }
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        try {
+            for (int i = 0; i < limit + extra; i++) {
+                String body = "{\"posted_by\":1,\"message_text\":\"shed " + i + "\",\"time_posted_epoch\":1669947792}";
+                responses.add(webClient.sendAsync(HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:8080/messages"))
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .header("Content-Type", "application/json")
+                        .build(), HttpResponse.BodyHandlers.ofString()));
+            }
+
+            // The shed requests come back while the others are still waiting
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (done(responses) < extra && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(200);
+            int shed = 0;
+            for (CompletableFuture<HttpResponse<String>> response : responses) {
+                if (response.isDone()) {
+                    Assert.assertEquals(503, response.get().statusCode());
+                    Assert.assertTrue(response.get().headers().firstValue("Retry-After").isPresent());
+                    shed++;
+                }
+            }
+            Assert.assertEquals(extra, shed);
+            Assert.assertEquals(200, get("/messages/1").statusCode());
+        } finally {
+            release.countDown();
+        }
+        CompletableFuture.allOf(blockers.toArray(new CompletableFuture<?>[0])).join();
+
+        int created = 0;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            if (response.get().statusCode() == 200) {
+                created++;
+            }
+        }
+        Assert.assertEquals(limit, created);
+
+        writes = limit("writes");
+        Assert.assertEquals(0, writes.get("inFlight").asInt());
+        Assert.assertEquals(extra, writes.get("rejected").asInt());
+    }
+
+
+    /**
+     * Sending an http request to PATCH localhost:8080/messages/1 with a body that isn't JSON
+     *
+     * Expected Response:
+     *  Status Code: 500, and the write's slot is given back even though the handler threw
+     */
+    @Test
+    public void failedRequestReleasesSlot() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("not json"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(500, response.statusCode());
+        Assert.assertEquals(0, limit("writes").get("inFlight").asInt());
+        Assert.assertEquals(1, limit("writes").get("accepted").asInt());
+    }
+
+
+
+    private static int done(List<CompletableFuture<HttpResponse<String>>> responses) {
+        int done = 0;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            if (response.isDone()) {
+                done++;
+            }
+        }
+        return done;
+    }
+
+    private JsonNode limit(String name) throws IOException, InterruptedException {
+        for (JsonNode limit : objectMapper.readTree(get("/metrics/limits").body())) {
+            if (limit.get("name").asText().equals(name)) {
+                return limit;
+            }
+        }
+        throw new AssertionError("No limit named " + name);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class LookupMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/lookup with IDs out of order, a repeated ID and IDs
+     * that don't exist, after one of the messages has been read (and cached) on its own
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the existing messages in the order asked for, and the missing IDs
+     */
+    @Test
+    public void lookupMessagesInRequestOrder() throws IOException, InterruptedException {
+        HttpRequest post = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1,\"message_text\":\"test message 2\",\"time_posted_epoch\":1669947800}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(post, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest get = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .build();
+        Assert.assertEquals(200, webClient.send(get, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/lookup"))
+                .POST(HttpRequest.BodyPublishers.ofString("[2, 99, 1, 2, 100]"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        JsonNode lookup = objectMapper.readTree(response.body());
+        List<Message> expectedMessages = new ArrayList<>();
+        expectedMessages.add(new Message(2, 1, "test message 2", 1669947800));
+        expectedMessages.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expectedMessages,
+                objectMapper.convertValue(lookup.get("messages"), new TypeReference<List<Message>>(){}));
+        Assert.assertEquals(List.of(99, 100),
+                objectMapper.convertValue(lookup.get("missing"), new TypeReference<List<Integer>>(){}));
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids=1,7
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: message 1, with 7 missing
+     */
+    @Test
+    public void lookupMessagesByQueryParameter() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages?ids=1,7");
+
+        Assert.assertEquals(200, response.statusCode());
+        JsonNode lookup = objectMapper.readTree(response.body());
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792),
+                objectMapper.treeToValue(lookup.get("messages").get(0), Message.class));
+        Assert.assertEquals(1, lookup.get("messages").size());
+        Assert.assertEquals(7, lookup.get("missing").get(0).asInt());
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?ids=1,abc
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void lookupMessagesMalformedIds() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?ids=1,abc").statusCode());
+    }
+
+
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageChange;
+import Service.ChangeLog;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageChangesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/changes without a token, then creating, updating and
+     * deleting messages and asking for the changes since the returned token
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a resync signal at first, then the three changes in order
+     */
+    @Test
+    public void getChangesSinceToken() throws IOException, InterruptedException {
+        JsonNode first = get("/messages/changes");
+        Assert.assertTrue(first.get("resync").asBoolean());
+        String token = first.get("token").asText();
+
+        send("POST", "/messages", "{\"posted_by\":1,\"message_text\":\"hello message\",\"time_posted_epoch\":1669947792}");
+        send("PATCH", "/messages/1", "{\"message_text\":\"updated message\"}");
+        send("DELETE", "/messages/2", "");
+
+        JsonNode changes = get("/messages/changes?since=" + token);
+        Assert.assertFalse(changes.get("resync").asBoolean());
+        Assert.assertEquals(3, changes.get("changes").size());
+        Assert.assertEquals("CREATED", changes.get("changes").get(0).get("type").asText());
+        Assert.assertEquals("UPDATED", changes.get("changes").get(1).get("type").asText());
+        Assert.assertEquals("updated message", changes.get("changes").get(1).get("message").get("message_text").asText());
+        Assert.assertEquals("DELETED", changes.get("changes").get(2).get("type").asText());
+        Assert.assertEquals(2, changes.get("changes").get(2).get("message").get("message_id").asInt());
+
+        JsonNode none = get("/messages/changes?since=" + changes.get("token").asText());
+        Assert.assertEquals(0, none.get("changes").size());
+        Assert.assertFalse(none.get("resync").asBoolean());
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/changes with a malformed token
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getChangesInvalidToken() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/changes?since=not-a-token"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+
+    /**
+     * Changes that have been overwritten in the ring buffer can't be served, so asking for them returns null.
+     */
+    @Test
+    public void changeLogAgesOutOldChanges() {
+        ChangeLog changeLog = new ChangeLog(2);
+        for (int i = 1; i <= 3; i++) {
+            changeLog.append(MessageChange.Type.CREATED, new Message(i, 1, "message " + i, 1669947792));
+        }
+
+        Assert.assertNull(changeLog.since(0, 10));
+        List<MessageChange> changes = changeLog.since(1, 10);
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals(2, changes.get(0).getVersion());
+        Assert.assertEquals(1, changeLog.since(1, 1).size());
+    }
+
+
+
+    private JsonNode get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readTree(response.body());
+    }
+
+    private void send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
@@ -0,0 +1,254 @@
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.DataAccessException;
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Service.MessageService;
+
+public class MessageServiceCacheTest {
+    MessageDAO messageDAO;
+    MessageService messageService;
+
+    /**
+     * Before every test, create a MessageService backed by a mock MessageDAO holding message 1.
+     */
+    @Before
+    public void setUp() {
+        messageDAO = mock(MessageDAO.class);
+        when(messageDAO.getMessageById(1)).thenReturn(new Message(1, 1, "test message 1", 1669947792));
+        messageService = new MessageService(messageDAO);
+    }
+
+
+    /**
+     * Getting the same message twice only queries the DAO once.
+     */
+    @Test
+    public void getMessageServedFromCache() {
+        Message first = messageService.getMessage(1);
+        Message second = messageService.getMessage(1);
+
+        Assert.assertEquals(first, second);
+        verify(messageDAO, times(1)).getMessageById(1);
+    }
+
+
+    /**
+     * Updating a message drops the cached copy instead of writing the new text through, so the next get reads it
+     * back from the DAO.
+     */
+    @Test
+    public void updateMessageRefreshesCache() {
+        Message updated = new Message(1, 1, "updated message", 1669947792);
+        when(messageDAO.updateMessageTextById(1, updated)).thenReturn(updated);
+
+        messageService.getMessage(1);
+        when(messageDAO.getMessageById(1)).thenReturn(updated);
+        messageService.updateMessageText(1, updated);
+
+        Assert.assertEquals(updated, messageService.getMessage(1));
+        verify(messageDAO, times(2)).getMessageById(1);
+    }
+
+
+    /**
+     * Editing a message while a get is reading it from the DAO keeps the text that get read out of the cache, so
+     * the next get reads the edit.
+     */
+    @Test
+    public void editDuringLoadIsNotHidden() {
+        Message original = new Message(1, 1, "test message 1", 1669947792);
+        Message updated = new Message(1, 1, "updated message", 1669947792);
+        when(messageDAO.updateMessageTextById(1, updated)).thenReturn(updated);
+        AtomicBoolean edited = new AtomicBoolean();
+        when(messageDAO.getMessageById(1)).thenAnswer(invocation -> {
+            if (edited.getAndSet(true)) {
+                return updated;
+            }
+            // Commits after the get's query read the row
+            messageService.updateMessageText(1, updated);
+            return original;
+        });
+
+        Assert.assertEquals(original, messageService.getMessage(1));
+        Assert.assertEquals(updated, messageService.getMessage(1));
+    }
+
+
+    /**
+     * Reading a message's version from the DAO drops its cached text, which may be older than that version, so the
+     * text served with the version's ETag is read after it.
+     */
+    @Test
+    public void versionLoadRefreshesCachedText() {
+        Message edited = new Message(1, 1, "edited elsewhere", 1669947792);
+        messageService.getMessage(1);
+        when(messageDAO.getMessageById(1)).thenReturn(edited);
+        when(messageDAO.getMessageVersionById(1)).thenReturn(1L);
+
+        Assert.assertEquals(Long.valueOf(1), messageService.getMessageVersion(1));
+        Assert.assertEquals(edited, messageService.getMessage(1));
+    }
+
+
+    /**
+     * Deleting a message evicts it and remembers it as missing, so the next get returns null without querying the
+     * DAO.
+     */
+    @Test
+    public void deleteMessageEvictsCache() {
+        when(messageDAO.deleteMessageById(1)).thenReturn(new Message(1, 1, "test message 1", 1669947792));
+
+        messageService.getMessage(1);
+        messageService.deleteMessageById(1);
+
+        Assert.assertNull(messageService.getMessage(1));
+        verify(messageDAO, times(1)).getMessageById(1);
+    }
+
+
+    /**
+     * Looking up a missing message only queries the DAO for the first lookup, but deleting it still asks the DAO,
+     * since a message created in the meantime must not survive a delete.
+     */
+    @Test
+    public void missingMessageServedFromNegativeCache() {
+        Assert.assertNull(messageService.getMessage(2));
+        Assert.assertNull(messageService.getMessage(2));
+        Assert.assertNull(messageService.deleteMessageById(2));
+
+        verify(messageDAO, times(1)).getMessageById(2);
+        verify(messageDAO, times(1)).deleteMessageById(2);
+    }
+
+
+    /**
+     * A delete that fails in the database doesn't remember the message as missing, so it's still served afterwards.
+     */
+    @Test
+    public void failedDeleteIsNotNegativeCached() {
+        when(messageDAO.deleteMessageById(1)).thenThrow(new DataAccessException(new SQLException("Delete failed")));
+        when(messageDAO.getMessageVersionById(1)).thenReturn(0L);
+
+        Assert.assertThrows(DataAccessException.class, () -> messageService.deleteMessageById(1));
+
+        Assert.assertEquals(Long.valueOf(0), messageService.getMessageVersion(1));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), messageService.getMessage(1));
+    }
+
+
+    /**
+     * Creating a message while a lookup that misses it is reading the DAO doesn't leave its ID in the negative
+     * cache, so the next get finds it.
+     */
+    @Test
+    public void createDuringMissingLookupIsNotHidden() {
+        Message message = new Message(1, "new message", 1669947793);
+        Message created = new Message(2, 1, "new message", 1669947793);
+        when(messageDAO.insertMessage(message)).thenReturn(created);
+        when(messageDAO.getMessagesByIds(anyCollection())).thenAnswer(invocation -> {
+            // Commits after the lookup's query read the table
+            messageService.createMessage(message);
+            return new ArrayList<Message>();
+        });
+
+        Assert.assertEquals(Collections.singletonList(2), messageService.getMessages(Arrays.asList(2)).getMissing());
+        Assert.assertEquals(created, messageService.getMessage(2));
+    }
+
+
+    /**
+     * Checking the version of a missing message, as every GET /messages/{message_id} does, only queries the DAO
+     * once, and getting the message afterwards doesn't query it at all.
+     */
+    @Test
+    public void missingMessageVersionServedFromNegativeCache() {
+        when(messageDAO.getMessageVersionById(2)).thenReturn(null);
+
+        Assert.assertNull(messageService.getMessageVersion(2));
+        Assert.assertNull(messageService.getMessageVersion(2));
+        Assert.assertNull(messageService.getMessage(2));
+
+        verify(messageDAO, times(1)).getMessageVersionById(2);
+        verify(messageDAO, times(0)).getMessageById(2);
+    }
+
+
+    /**
+     * Creating a message clears its ID from the negative cache.
+     */
+    @Test
+    public void createMessageClearsNegativeCache() {
+        Message message = new Message(1, "new message", 1669947793);
+        Message created = new Message(2, 1, "new message", 1669947793);
+        when(messageDAO.insertMessage(message)).thenReturn(created);
+
+        Assert.assertNull(messageService.getMessage(2));
+        messageService.createMessage(message);
+
+        Assert.assertEquals(created, messageService.getMessage(2));
+    }
+
+
+    /**
+     * An account's timeline is loaded once, and a created message is inserted into the cached timeline in
+     * chronological order without querying the DAO again.
+     */
+    @Test
+    public void createMessageAppendsToCachedTimeline() {
+        List<Message> timeline = new ArrayList<>();
+        timeline.add(new Message(1, 1, "test message 1", 1669947792));
+        when(messageDAO.getMessagesPageByAccountId(eq(1), isNull(), anyInt())).thenReturn(new MessagePage(timeline, null));
+
+        Message message = new Message(1, "new message", 1669947700);
+        Message created = new Message(2, 1, "new message", 1669947700);
+        when(messageDAO.insertMessage(message)).thenReturn(created);
+
+        messageService.getAllMessagesByAccount(1);
+        messageService.createMessage(message);
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(created);
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expectedResult, messageService.getAllMessagesByAccount(1));
+        verify(messageDAO, times(1)).getMessagesPageByAccountId(eq(1), isNull(), anyInt());
+    }
+
+
+    /**
+     * Creating a message moves the global feed version and the poster's feed version, but not other accounts'.
+     */
+    @Test
+    public void createMessageBumpsFeedVersions() {
+        Message message = new Message(1, "new message", 1669947793);
+        when(messageDAO.insertMessage(message)).thenReturn(new Message(2, 1, "new message", 1669947793));
+
+        long feedVersion = messageService.getFeedVersion();
+        long accountFeedVersion = messageService.getAccountFeedVersion(1);
+        long otherFeedVersion = messageService.getAccountFeedVersion(2);
+        messageService.createMessage(message);
+
+        Assert.assertNotEquals(feedVersion, messageService.getFeedVersion());
+        Assert.assertNotEquals(accountFeedVersion, messageService.getAccountFeedVersion(1));
+        Assert.assertEquals(otherFeedVersion, messageService.getAccountFeedVersion(2));
+    }
+}
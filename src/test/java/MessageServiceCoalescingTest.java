@@ -0,0 +1,138 @@
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Service.MessageService;
+import Service.SingleFlightStats;
+
+public class MessageServiceCoalescingTest {
+    private static final int CLIENTS = 20;
+
+    MessageDAO messageDAO;
+    MessageService messageService;
+    ExecutorService clients;
+    CountDownLatch release;
+
+    /**
+     * Before every test, create a MessageService backed by a mock MessageDAO whose queries block until the test
+     * releases them.
+     */
+    @Before
+    public void setUp() {
+        messageDAO = mock(MessageDAO.class);
+        messageService = new MessageService(messageDAO);
+        clients = Executors.newFixedThreadPool(CLIENTS);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        clients.shutdownNow();
+    }
+
+
+    /**
+     * Many clients getting the same uncached message at once share one query and all get the message.
+     */
+    @Test
+    public void concurrentGetMessageSharesOneQuery() throws Exception {
+        Message message = new Message(1, 1, "test message 1", 1669947792);
+        when(messageDAO.getMessageById(1)).thenAnswer(invocation -> {
+            release.await();
+            return message;
+        });
+
+        List<Message> results = runConcurrently(() -> messageService.getMessage(1), "message");
+
+        for (Message result : results) {
+            Assert.assertEquals(message, result);
+        }
+        verify(messageDAO, times(1)).getMessageById(1);
+    }
+
+
+    /**
+     * Many clients getting the same page at once share one query, but a client asking after a new message is
+     * created gets a query of its own.
+     */
+    @Test
+    public void concurrentGetPageSharesOneQueryUntilFeedChanges() throws Exception {
+        List<Message> messages = new ArrayList<>();
+        messages.add(new Message(1, 1, "test message 1", 1669947792));
+        MessagePage page = new MessagePage(messages, null);
+        when(messageDAO.getMessagesPage(isNull(), eq(10))).thenAnswer(invocation -> {
+            release.await();
+            return page;
+        });
+
+        List<MessagePage> results = runConcurrently(() -> messageService.getMessagesPage(null, 10), "page");
+
+        for (MessagePage result : results) {
+            Assert.assertSame(page, result);
+        }
+        verify(messageDAO, times(1)).getMessagesPage(null, 10);
+
+        Message newMessage = new Message(1, "new message", 1669947793);
+        when(messageDAO.insertMessage(newMessage)).thenReturn(new Message(2, 1, "new message", 1669947793));
+        messageService.createMessage(newMessage);
+        messageService.getMessagesPage(null, 10);
+        verify(messageDAO, times(2)).getMessagesPage(null, 10);
+    }
+
+
+
+    /**
+     * Runs a read from every client at once, waits until all but one have joined the first one's query, then lets
+     * the query finish.
+     */
+    private <T> List<T> runConcurrently(Supplier<T> read, String name) throws Exception {
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            futures.add(clients.submit(read::get));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (stats(name).getCoalesced() < CLIENTS - 1 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(future.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, stats(name).getLoads());
+        Assert.assertEquals(CLIENTS - 1, stats(name).getCoalesced());
+        return results;
+    }
+
+    private SingleFlightStats stats(String name) {
+        for (SingleFlightStats stats : messageService.getSingleFlightStats()) {
+            if (stats.getName().equals(name)) {
+                return stats;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+}
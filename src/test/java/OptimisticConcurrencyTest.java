@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class OptimisticConcurrencyTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Two clients read message 1, then both PATCH it with "If-Match" set to the ETag they read
+     *
+     * Expected Response:
+     *  The first PATCH succeeds with a new ETag, the second gets 412 with that same ETag and doesn't change the
+     *  message, and the conflict is counted
+     */
+    @Test
+    public void conflictingEditIsRejected() throws IOException, InterruptedException {
+        String etag = get("/messages/1").headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> first = patch("{\"message_text\":\"first edit\"}", etag);
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals(new Message(1, 1, "first edit", 1669947792),
+                objectMapper.readValue(first.body(), Message.class));
+        String newEtag = first.headers().firstValue("ETag").orElseThrow();
+        Assert.assertNotEquals(etag, newEtag);
+
+        HttpResponse<String> second = patch("{\"message_text\":\"second edit\"}", etag);
+        Assert.assertEquals(412, second.statusCode());
+        Assert.assertEquals(newEtag, second.headers().firstValue("ETag").orElseThrow());
+
+        HttpResponse<String> current = get("/messages/1");
+        Assert.assertEquals(newEtag, current.headers().firstValue("ETag").orElseThrow());
+        Assert.assertTrue(current.body().contains("first edit"));
+
+        JsonNode stats = objectMapper.readTree(get("/metrics/edits").body());
+        Assert.assertEquals(2, stats.get("conditionalEdits").asInt());
+        Assert.assertEquals(1, stats.get("conflicts").asInt());
+    }
+
+
+    /**
+     * PATCHing message 1 with "If-Match" set to an ETag that isn't one of its ETags, and PATCHing a message that
+     * doesn't exist with "If-Match: *"
+     *
+     * Expected Response:
+     *  Status Code: 412
+     */
+    @Test
+    public void unmatchedPreconditionFails() throws IOException, InterruptedException {
+        Assert.assertEquals(412, patch("{\"message_text\":\"edit\"}", "\"m2-r0\"").statusCode());
+        Assert.assertEquals(412, send("/messages/99", "{\"message_text\":\"edit\"}", "*").statusCode());
+        Assert.assertTrue(get("/messages/1").body().contains("test message 1"));
+    }
+
+
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> patch(String body, String ifMatch) throws IOException, InterruptedException {
+        return send("/messages/1", body, ifMatch);
+    }
+
+    private HttpResponse<String> send(String path, String body, String ifMatch)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .header("If-Match", ifMatch)
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RateLimitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending more http requests to POST localhost:8080/messages as one account than its burst allows
+     *
+     * Expected Response:
+     *  The burst is created, then Status Code: 429 with a "Retry-After" header, and the message isn't created
+     */
+    @Test
+    public void messagesLimitedPerAccount() throws IOException, InterruptedException {
+        for (int i = 0; i < 30; i++) {
+            Assert.assertEquals(200, post("/messages", message(i)).statusCode());
+        }
+
+        HttpResponse<String> limited = post("/messages", message(30));
+        Assert.assertEquals(429, limited.statusCode());
+        Assert.assertTrue(limited.headers().firstValue("Retry-After").isPresent());
+        Assert.assertEquals("", get("/messages/32").body());
+    }
+
+
+    /**
+     * Sending more http requests to POST localhost:8080/login for one username than its burst allows
+     *
+     * Expected Response:
+     *  Wrong passwords get Status Code: 401 until the burst is used up, after which even the right password gets
+     *  429
+     */
+    @Test
+    public void loginsLimitedPerUsername() throws IOException, InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(401, post("/login", login("guess" + i)).statusCode());
+        }
+
+        Assert.assertEquals(429, post("/login", login("password")).statusCode());
+    }
+
+
+
+    private static String message(int i) {
+        return "{\"posted_by\":1,\"message_text\":\"spam " + i + "\",\"time_posted_epoch\":1669947792}";
+    }
+
+    private static String login(String password) {
+        return "{\"username\":\"testuser1\",\"password\":\"" + password + "\"}";
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
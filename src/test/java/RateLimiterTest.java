@@ -0,0 +1,78 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.RateLimiter;
+
+public class RateLimiterTest {
+
+    /**
+     * A key gets its burst of requests, then is refused, while other keys have buckets of their own.
+     */
+    @Test
+    public void burstThenRefused() {
+        RateLimiter<String> limiter = new RateLimiter<>("test", 60, 3, 100);
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(limiter.tryAcquire("a"));
+        }
+        Assert.assertFalse(limiter.tryAcquire("a"));
+        Assert.assertTrue(limiter.tryAcquire("b"));
+
+        Assert.assertEquals(4, limiter.getStats().getAllowed());
+        Assert.assertEquals(1, limiter.getStats().getLimited());
+        Assert.assertEquals(1, limiter.getRetryAfterSeconds());
+    }
+
+
+    /**
+     * An emptied bucket gets a token back after one refill interval.
+     */
+    @Test
+    public void refills() throws InterruptedException {
+        RateLimiter<String> limiter = new RateLimiter<>("test", 600, 1, 100);
+
+        Assert.assertTrue(limiter.tryAcquire("a"));
+        Assert.assertFalse(limiter.tryAcquire("a"));
+        Thread.sleep(150);
+        Assert.assertTrue(limiter.tryAcquire("a"));
+    }
+
+
+    /**
+     * Many threads racing for one bucket get exactly its burst of tokens between them.
+     */
+    @Test
+    public void concurrentRequestsShareOneBucket() throws Exception {
+        RateLimiter<Integer> limiter = new RateLimiter<>("test", 1, 50, 100);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(callers.submit(() -> {
+                    int allowed = 0;
+                    for (int i = 0; i < 100; i++) {
+                        if (limiter.tryAcquire(1)) {
+                            allowed++;
+                        }
+                    }
+                    return allowed;
+                }));
+            }
+
+            int allowed = 0;
+            for (Future<Integer> result : results) {
+                allowed += result.get(5, TimeUnit.SECONDS);
+            }
+            Assert.assertEquals(50, allowed);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+}
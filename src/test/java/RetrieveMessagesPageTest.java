@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesPageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add a few more messages, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        addMessages();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+
+    /**
+     * Sending http requests to GET localhost:8080/messages?limit=2, then following the Link header
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representations of the first two messages, then the last two
+     *  Link Header: present on the first page only
+     */
+    @Test
+    public void getMessagesPageFollowLinks() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=2"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedResult.add(new Message(2, 1, "test message 2", 1669947793));
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+
+        Optional<String> link = response.headers().firstValue("Link");
+        Assert.assertTrue(link.isPresent());
+        String next = link.get().substring(link.get().indexOf('<') + 1, link.get().indexOf('>'));
+
+        request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + next))
+                .build();
+        response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+
+        expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(4, 1, "test message 4", 1669947793));
+        expectedResult.add(new Message(3, 1, "test message 3", 1669947794));
+        actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+        Assert.assertFalse(response.headers().firstValue("Link").isPresent());
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?limit=3
+     * 
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the first three messages by account 1
+     */
+    @Test
+    public void getMessagesPageByAccount() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages?limit=3"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> actualResult = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(3, actualResult.size());
+        Assert.assertTrue(response.headers().firstValue("Link").isPresent());
+    }
+
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with a malformed cursor
+     * 
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesPageInvalidCursor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?cursor=not-a-cursor"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+
+
+    /**
+     * Adds messages 2 to 4. Messages 2 and 4 share a timestamp, so message 4 sorts before message 3.
+     */
+    private void addMessages(){
+        try {
+                Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(
+                        "insert into message (posted_by, message_text, time_posted_epoch) values (?, ?, ?)");
+                long[] times = { 1669947793, 1669947794, 1669947793 };
+                for (int i = 0; i < times.length; i++) {
+                    ps.setInt(1, 1);
+                    ps.setString(2, "test message " + (i + 2));
+                    ps.setLong(3, times[i]);
+                    ps.executeUpdate();
+                }
+        } catch (SQLException e) {
+                e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import Controller.SocialMediaController;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Load-tests the server in the thread mode picked by the "socialmedia.server.threads" system property
+ * ("platform" or "virtual"), printing throughput, latency percentiles, failed requests and peak platform threads.
+ * Run it once per mode and compare. This is not part of the test suite; run its main method with the test
+ * classpath after mvn test-compile, e.g.
+ *
+ *  java -Dsocialmedia.server.threads=virtual -cp target/classes:target/test-classes:$(cat cp.txt) \
+ *      ServerThreadsLoadBenchmark [clients] [seconds]
+ *
+ * Each client sends requests back to back: half POST /messages, the rest a page of GET /messages or one account's
+ * messages, so every request does blocking JDBC work.
+ */
+public class ServerThreadsLoadBenchmark {
+    private static final int PORT = 8080;
+    private static final int WARMUP_SECONDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+
+        // Every client posts as account 1, which its rate limit would stop
+        // almost at once
+        System.setProperty("socialmedia.rateLimit.enabled",
+                System.getProperty("socialmedia.rateLimit.enabled", "false"));
+
+        ConnectionUtil.resetTestDatabase();
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(PORT);
+
+        HttpClient webClient = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(8))
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        try {
+            run(webClient, clients, WARMUP_SECONDS, false);
+            run(webClient, clients, seconds, true);
+        } finally {
+            app.stop();
+        }
+        System.exit(0);
+    }
+
+    private static void run(HttpClient webClient, int clients, int seconds, boolean report) throws Exception {
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        LongAdder failures = new LongAdder();
+        AtomicInteger peakThreads = new AtomicInteger();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        ExecutorService workers = Executors.newFixedThreadPool(clients);
+        for (int i = 0; i < clients; i++) {
+            workers.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response =
+                                webClient.send(nextRequest(), HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() != 200) {
+                            failures.increment();
+                        }
+                    } catch (Exception e) {
+                        failures.increment();
+                    }
+                    latencies.add(System.nanoTime() - start);
+                }
+            });
+        }
+
+        while (System.nanoTime() < deadline) {
+            peakThreads.accumulateAndGet(ManagementFactory.getThreadMXBean().getThreadCount(), Math::max);
+            Thread.sleep(100);
+        }
+        workers.shutdown();
+        workers.awaitTermination(30, TimeUnit.SECONDS);
+
+        if (!report) {
+            return;
+        }
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        System.out.printf("threads=%s clients=%d: %.0f req/s, p50 %.1f ms, p99 %.1f ms, max %.1f ms, "
+                        + "%d failed, peak %d platform threads (%d of them clients)%n",
+                System.getProperty("socialmedia.server.threads", "platform"), clients,
+                sorted.length / (double) seconds, percentile(sorted, 0.50), percentile(sorted, 0.99),
+                sorted[sorted.length - 1] / 1e6, failures.sum(), peakThreads.get(), clients);
+        System.out.println("  " + ConnectionPool.getStats());
+    }
+
+    private static HttpRequest nextRequest() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int kind = random.nextInt(4);
+        if (kind < 2) {
+            return HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:" + PORT + "/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"load "
+                            + random.nextInt() + "\",\"time_posted_epoch\":" + System.currentTimeMillis() + "}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+        }
+        String path = kind == 2 ? "/messages?limit=20" : "/accounts/1/messages?limit=20";
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + PORT + path))
+                .build();
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+}
@@ -0,0 +1,226 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the ConnectionPool's bounds and the lifecycle of the connections
+ * and statements it lends out.
+ */
+public class ConnectionPoolTest {
+
+    /**
+     * Before every test, reset the database and wait for any connections still held by earlier tests' background
+     * work to come back.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ConnectionPool.getStats().getActive() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+
+    /**
+     * Borrowing one more connection than the pool's maximum size while the rest are held
+     *
+     * Expected Response:
+     *  The extra borrow waits out the borrow timeout and fails with SQLTimeoutException, and borrowing works again
+     *  once a connection is returned
+     */
+    @Test
+    public void borrowPastMaxSizeTimesOut() throws SQLException {
+        int maxSize = ConnectionPool.getStats().getMaxSize();
+        long timeouts = ConnectionPool.getStats().getBorrowTimeouts();
+
+        List<Connection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < maxSize; i++) {
+                held.add(ConnectionPool.getConnection());
+            }
+            Assert.assertEquals(maxSize, ConnectionPool.getStats().getActive());
+
+            try {
+                ConnectionPool.getConnection();
+                Assert.fail("borrowed more than " + maxSize + " connections");
+            } catch (SQLTimeoutException e) {
+                Assert.assertEquals(timeouts + 1, ConnectionPool.getStats().getBorrowTimeouts());
+            }
+        } finally {
+            for (Connection connection : held) {
+                ConnectionPool.close(connection);
+            }
+        }
+
+        Connection connection = ConnectionPool.getConnection();
+        ConnectionPool.close(connection);
+    }
+
+    /**
+     * Closing a connection twice
+     *
+     * Expected Response:
+     *  The second close does nothing: the connection is returned to the idle pool only once
+     */
+    @Test
+    public void closeTwiceReturnsOnce() throws SQLException {
+        Connection connection = ConnectionPool.getConnection();
+        connection.close();
+        PooledConnection pooled = ConnectionPool.idle.peek();
+        int idle = ConnectionPool.idle.size();
+
+        connection.close();
+
+        Assert.assertTrue(connection.isClosed());
+        Assert.assertEquals(idle, ConnectionPool.idle.size());
+        Assert.assertEquals(1, ConnectionPool.idle.stream().filter(p -> p == pooled).count());
+        Assert.assertEquals(0, ConnectionPool.getStats().getActive());
+    }
+
+    /**
+     * Using a connection, and a statement prepared on it, after the connection was closed
+     *
+     * Expected Response:
+     *  Both throw SQLException instead of touching the connection's next borrower
+     */
+    @Test
+    public void useAfterCloseFails() throws SQLException {
+        Connection connection = ConnectionPool.getConnection();
+        PreparedStatement ps = connection.prepareStatement("SELECT 1");
+        connection.close();
+
+        try {
+            connection.createStatement();
+            Assert.fail("used a closed connection");
+        } catch (SQLException expected) {
+        }
+        try {
+            ps.executeQuery();
+            Assert.fail("used a statement of a closed connection");
+        } catch (SQLException expected) {
+        }
+    }
+
+    /**
+     * Borrowing again after the idle connection the pool would hand out has been idle past the validation
+     * interval, and died in the meantime
+     *
+     * Expected Response:
+     *  The dead connection is discarded and a working one is handed out instead
+     */
+    @Test
+    public void deadIdleConnectionFailsValidation() throws SQLException {
+        Connection connection = ConnectionPool.getConnection();
+        ConnectionPool.close(connection);
+        PooledConnection pooled = ConnectionPool.idle.peek();
+        pooled.idleSinceNanos -= TimeUnit.MILLISECONDS.toNanos(ConnectionPool.validationMillis);
+        pooled.physical.close();
+
+        connection = ConnectionPool.getConnection();
+        try {
+            Assert.assertFalse(connection.toString().contains(pooled.physical.toString()));
+            Assert.assertFalse(ConnectionPool.idle.contains(pooled));
+            Assert.assertEquals(1, selectOne(connection));
+        } finally {
+            ConnectionPool.close(connection);
+        }
+    }
+
+    /**
+     * Borrowing again after the idle connection the pool would hand out has been idle past the validation
+     * interval, but is still alive
+     *
+     * Expected Response:
+     *  The connection passes validation and is reused
+     */
+    @Test
+    public void liveIdleConnectionPassesValidation() throws SQLException {
+        Connection connection = ConnectionPool.getConnection();
+        String physical = connection.toString();
+        ConnectionPool.close(connection);
+        ConnectionPool.idle.peek().idleSinceNanos -= TimeUnit.MILLISECONDS.toNanos(ConnectionPool.validationMillis);
+
+        connection = ConnectionPool.getConnection();
+        try {
+            Assert.assertEquals(physical, connection.toString());
+        } finally {
+            ConnectionPool.close(connection);
+        }
+    }
+
+    /**
+     * Housekeeping after a connection has been idle past the idle timeout
+     *
+     * Expected Response:
+     *  The connection is removed from the idle pool and closed
+     */
+    @Test
+    public void housekeepingEvictsIdleConnections() throws SQLException {
+        Connection connection = ConnectionPool.getConnection();
+        ConnectionPool.close(connection);
+        PooledConnection pooled = ConnectionPool.idle.peek();
+        pooled.idleSinceNanos -= TimeUnit.MILLISECONDS.toNanos(ConnectionPool.idleTimeoutMillis);
+
+        ConnectionPool.housekeep();
+
+        Assert.assertFalse(ConnectionPool.idle.contains(pooled));
+        Assert.assertTrue(pooled.physical.isClosed());
+    }
+
+    /**
+     * Returning a connection without closing the statements prepared or created on it
+     *
+     * Expected Response:
+     *  The statements are closed along with the connection, and the cached one is back in the statement cache for
+     *  the connection's next borrower
+     */
+    @Test
+    public void unclosedStatementsReleasedOnReturn() throws SQLException {
+        Connection connection = ConnectionPool.getConnection();
+        String physical = connection.toString();
+        PreparedStatement cached = connection.prepareStatement("SELECT 1");
+        String cachedStatement = cached.toString();
+        Statement uncached = connection.createStatement();
+        connection.close();
+
+        Assert.assertTrue(cached.isClosed());
+        Assert.assertTrue(uncached.isClosed());
+
+        connection = ConnectionPool.getConnection();
+        try {
+            Assert.assertEquals(physical, connection.toString());
+            PreparedStatement ps = connection.prepareStatement("SELECT 1");
+            Assert.assertEquals(cachedStatement, ps.toString());
+            ps.close();
+        } finally {
+            ConnectionPool.close(connection);
+        }
+    }
+
+
+
+    /**
+     * @return  The result of "SELECT 1" on the connection
+     */
+    private static int selectOne(Connection connection) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement("SELECT 1");
+        ResultSet rs = ps.executeQuery();
+        Assert.assertTrue(rs.next());
+        int result = rs.getInt(1);
+        ps.close();
+        return result;
+    }
+}
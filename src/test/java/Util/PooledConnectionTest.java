@@ -0,0 +1,116 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the per-connection statement cache, on a PooledConnection that
+ * caches only two statements.
+ *
+ * Statement handles print the H2 statement they wrap, whose name is unique,
+ * so comparing them tells whether a prepare reused a cached statement.
+ */
+public class PooledConnectionTest {
+    PooledConnection pooled;
+    Connection connection;
+
+    /**
+     * Before every test, open a PooledConnection outside the pool, caching two statements.
+     */
+    @Before
+    public void setUp() {
+        pooled = new PooledConnection(ConnectionUtil.getConnection(), 2);
+        connection = pooled.newHandle();
+    }
+
+    /**
+     * After every test, close the physical connection. The handle isn't closed, since that would hand a connection
+     * the pool never lent out back to it.
+     */
+    @After
+    public void tearDown() {
+        pooled.closePhysical();
+    }
+
+
+    /**
+     * Preparing two statements, reusing the first, then preparing a third
+     *
+     * Expected Response:
+     *  The least recently used statement, the second, is evicted; the first is still cached
+     */
+    @Test
+    public void evictsLeastRecentlyUsedStatement() throws SQLException {
+        String first = prepareAndClose("SELECT 1");
+        String second = prepareAndClose("SELECT 2");
+        Assert.assertEquals(first, prepareAndClose("SELECT 1"));
+
+        prepareAndClose("SELECT 3");
+
+        Assert.assertEquals(first, prepareAndClose("SELECT 1"));
+        Assert.assertNotEquals(second, prepareAndClose("SELECT 2"));
+    }
+
+    /**
+     * Preparing more statements than the cache holds while the least recently used one is still open
+     *
+     * Expected Response:
+     *  The open statement is neither evicted nor closed, and still runs
+     */
+    @Test
+    public void neverEvictsStatementInUse() throws SQLException {
+        PreparedStatement held = connection.prepareStatement("SELECT 1");
+        String first = held.toString();
+
+        prepareAndClose("SELECT 2");
+        prepareAndClose("SELECT 3");
+        prepareAndClose("SELECT 4");
+
+        Assert.assertFalse(held.isClosed());
+        ResultSet rs = held.executeQuery();
+        Assert.assertTrue(rs.next());
+        Assert.assertEquals(1, rs.getInt(1));
+        held.close();
+        Assert.assertEquals(first, prepareAndClose("SELECT 1"));
+    }
+
+    /**
+     * Preparing the same SQL twice before closing the first statement
+     *
+     * Expected Response:
+     *  The second statement is a different one, so the two don't share parameters
+     */
+    @Test
+    public void samePreparedTwiceIsNotShared() throws SQLException {
+        PreparedStatement first = connection.prepareStatement("SELECT ?");
+        PreparedStatement second = connection.prepareStatement("SELECT ?");
+        first.setInt(1, 1);
+        second.setInt(1, 2);
+
+        ResultSet rs = first.executeQuery();
+        Assert.assertTrue(rs.next());
+        Assert.assertEquals(1, rs.getInt(1));
+        Assert.assertNotEquals(first.toString(), second.toString());
+        first.close();
+        second.close();
+    }
+
+
+
+    /**
+     * @return  The name of the H2 statement the handle wrapped
+     */
+    private String prepareAndClose(String sql) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sql);
+        String statement = ps.toString();
+        ps.close();
+        return statement;
+    }
+}